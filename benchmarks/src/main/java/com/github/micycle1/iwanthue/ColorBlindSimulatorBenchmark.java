@@ -0,0 +1,54 @@
+package com.github.micycle1.iwanthue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.github.micycle1.iwanthue.ColorBlindSimulator.ConfusionType;
+
+/**
+ * Colorblind simulation of random in-gamut colors.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ColorBlindSimulatorBenchmark {
+
+	static final int COLORS = 1024;
+
+	@Param({ "PROTANOPIA", "DEUTERANOPIA", "TRITANOPIA" })
+	public String confusionType;
+
+	private ConfusionType type;
+	private double[][] labs;
+
+	@Setup
+	public void setup() {
+		type = ConfusionType.valueOf(confusionType);
+		labs = ColorDistanceBenchmark.randomLabs(COLORS, 2);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(COLORS)
+	public void simulate(Blackhole blackhole) {
+		for (double[] lab : labs) {
+			blackhole.consume(ColorBlindSimulator.simulate(lab, type));
+		}
+	}
+
+}
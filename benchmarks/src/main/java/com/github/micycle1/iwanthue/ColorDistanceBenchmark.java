@@ -0,0 +1,85 @@
+package com.github.micycle1.iwanthue;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.github.micycle1.iwanthue.ColorDistance.DistanceType;
+
+/**
+ * Distance between pairs of random in-gamut colors, both for [L, a, b] arrays
+ * and for prepared colors (as k-means and force-vector evaluate them).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ColorDistanceBenchmark {
+
+	static final int COLORS = 1024;
+
+	@Param({ "EUCLIDEAN", "CMC", "COMPROMISE", "CIEDE2000", "COMPROMISE_CIEDE2000" })
+	public String distanceType;
+
+	private DistanceType type;
+	private double[][] labs;
+	private PreparedColors prepared;
+
+	@Setup
+	public void setup() {
+		type = DistanceType.valueOf(distanceType);
+		labs = randomLabs(COLORS, 1);
+		prepared = new PreparedColors(COLORS, PreparedColors.simulates(type));
+		for (int i = 0; i < COLORS; i++) {
+			prepared.set(i, labs[i][0], labs[i][1], labs[i][2]);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(COLORS)
+	public void getColorDistance(Blackhole blackhole) {
+		for (int i = 0; i < COLORS; i++) {
+			blackhole.consume(ColorDistance.getColorDistance(labs[i], labs[(i + 1) & (COLORS - 1)], type));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(COLORS)
+	public void getColorDistancePrepared(Blackhole blackhole) {
+		for (int i = 0; i < COLORS; i++) {
+			blackhole.consume(ColorDistance.getColorDistance(prepared, i, prepared, (i + 1) & (COLORS - 1), type));
+		}
+	}
+
+	/**
+	 * @return random colors within the RGB color space
+	 */
+	static double[][] randomLabs(int count, long seed) {
+		SplittableRandom random = new SplittableRandom(seed);
+		double[][] labs = new double[count][];
+		for (int i = 0; i < count; i++) {
+			double[] lab;
+			do {
+				lab = new double[] { 100 * random.nextDouble(), 200 * random.nextDouble() - 100, 200 * random.nextDouble() - 100 };
+			} while (!Conversion.validateLab(lab));
+			labs[i] = lab;
+		}
+		return labs;
+	}
+
+}
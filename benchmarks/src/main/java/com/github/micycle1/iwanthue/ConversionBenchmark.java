@@ -0,0 +1,102 @@
+package com.github.micycle1.iwanthue;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Lab/RGB conversion of random colors, per color and in bulk. Scores are per
+ * color.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConversionBenchmark {
+
+	static final int COLORS = 1024;
+
+	private double[][] labs;
+	private double[][] rgbs;
+	private double[] labBuffer;
+	private double[] rgbBuffer;
+	private int[] argbBuffer;
+	private double[] output;
+
+	@Setup
+	public void setup() {
+		labs = ColorDistanceBenchmark.randomLabs(COLORS, 3);
+		SplittableRandom random = new SplittableRandom(3);
+		rgbs = new double[COLORS][];
+		labBuffer = new double[3 * COLORS];
+		rgbBuffer = new double[3 * COLORS];
+		argbBuffer = new int[COLORS];
+		output = new double[3 * COLORS];
+		for (int i = 0; i < COLORS; i++) {
+			rgbs[i] = new double[] { random.nextInt(256), random.nextInt(256), random.nextInt(256) };
+			System.arraycopy(labs[i], 0, labBuffer, 3 * i, 3);
+			System.arraycopy(rgbs[i], 0, rgbBuffer, 3 * i, 3);
+			argbBuffer[i] = 0xFF000000 | (int) rgbs[i][0] << 16 | (int) rgbs[i][1] << 8 | (int) rgbs[i][2];
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(COLORS)
+	public void labToRgb(Blackhole blackhole) {
+		for (double[] lab : labs) {
+			blackhole.consume(Conversion.labToRgb(lab));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(COLORS)
+	public void rgbToLab(Blackhole blackhole) {
+		for (double[] rgb : rgbs) {
+			blackhole.consume(Conversion.rgbToLab(rgb));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(COLORS)
+	public double[] labToRgbBatch() {
+		Conversion.labToRgb(labBuffer, output, COLORS);
+		return output;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(COLORS)
+	public double[] rgbToLabBatch() {
+		Conversion.rgbToLab(rgbBuffer, output, COLORS);
+		return output;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(COLORS)
+	public double[] argbToLab() {
+		Conversion.argbToLab(argbBuffer, 0, output, 0, COLORS);
+		return output;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(COLORS)
+	public void validateLab(Blackhole blackhole) {
+		for (double[] lab : labs) {
+			blackhole.consume(Conversion.validateLab(lab));
+		}
+	}
+
+}
@@ -0,0 +1,58 @@
+package com.github.micycle1.iwanthue;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.micycle1.iwanthue.ColorDistance.DistanceType;
+
+/**
+ * End-to-end palette generation. Runs are seeded, so every invocation generates
+ * the same palette. K-means sample spaces are cached across invocations, as
+ * they are across calls in an application.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GenerateBenchmark {
+
+	@Param({ "K_MEANS", "MINI_BATCH_K_MEANS", "FORCE_VECTOR" })
+	public String clustering;
+
+	@Param({ "DEFAULT", "EUCLIDEAN", "CMC", "COMPROMISE", "CIEDE2000", "COMPROMISE_CIEDE2000" })
+	public String distanceType;
+
+	@Param({ "5", "15", "40" })
+	public int colors;
+
+	@Param({ "NORMAL", "ULTRA", "ADAPTIVE" })
+	public String precision;
+
+	private Settings settings;
+
+	@Setup
+	public void setup() {
+		settings = new Settings().clustering(Clustering.valueOf(clustering)).distanceType(DistanceType.valueOf(distanceType))
+				.ultraPrecision(precision.equals("ULTRA")).adaptivePrecision(precision.equals("ADAPTIVE")).seed(1L);
+	}
+
+	@Benchmark
+	public List<double[]> generate() {
+		return iWantHue.generate(colors, settings);
+	}
+
+}
@@ -0,0 +1,19 @@
+package com.github.micycle1.iwanthue;
+
+/**
+ * Palette generation methods.
+ *
+ * @see Settings#clustering(Clustering)
+ */
+public enum Clustering {
+	/** k-means over a sampled color space (iWantHue's default). */
+	K_MEANS,
+	/**
+	 * Mini-batch k-means: each iteration updates the centroids from a random
+	 * subset of the samples, with per-centroid learning rates. Much cheaper per
+	 * iteration than k-means for large palettes, at similar quality.
+	 */
+	MINI_BATCH_K_MEANS,
+	/** Force-vector repulsion between colors. */
+	FORCE_VECTOR
+}
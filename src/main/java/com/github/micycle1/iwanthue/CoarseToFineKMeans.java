@@ -0,0 +1,134 @@
+package com.github.micycle1.iwanthue;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import com.github.micycle1.iwanthue.ColorDistance.DistanceType;
+
+/**
+ * K-means clustering that converges on a coarse sample grid, then refines the
+ * neighbourhoods of the centroids on a finer grid.
+ * <p>
+ * Once the coarse clustering converges (or has run its steps), clustering
+ * continues on a {@link SampleSpace#refine(SampleSpace, int[], int, int)
+ * two-resolution} space: the fine samples in the coarse cells around each
+ * centroid, and the coarse samples, weighted by the fine grid points they stand
+ * for, everywhere else. Each centroid thus settles among fine samples, while the
+ * rest of its cluster is still accounted for. If that clustering converges with
+ * centroids that have left their refined cells, the space is refined again
+ * around them.
+ * <p>
+ * A step is a single k-means iteration; when a phase converges, the step also
+ * runs the first iteration of the next phase, so the optimization only
+ * converges once the centroids have settled in their refined cells.
+ */
+final class CoarseToFineKMeans implements Optimizer {
+
+	/** Number of neighbouring coarse cells to refine around a centroid. */
+	static final int RADIUS = 1;
+
+	private final SampleSpace coarse;
+	private final SampleSpace fine;
+	private final int fixed;
+	private final DistanceType distanceType;
+	private final Executor executor;
+	private final double tolerance;
+	private int coarseSteps;
+
+	private KMeans kMeans;
+	/** Coarse cells of the centroids when last refined, or null if not refined. */
+	private int[] cells;
+
+	/**
+	 * @param coarse       coarse sample space
+	 * @param fine         fine sample space (with the same filter and constraint)
+	 * @param initial      initial centroids, as [L, a, b] arrays
+	 * @param fixed        number of leading centroids that do not move
+	 * @param coarseSteps  maximum number of steps on the coarse grid
+	 * @param tolerance    centroid shift at which a phase has converged
+	 * @param distanceType distance function to use
+	 * @param executor     executor to split blocks across, or null to run on the
+	 *                     calling thread
+	 */
+	CoarseToFineKMeans(SampleSpace coarse, SampleSpace fine, List<double[]> initial, int fixed, int coarseSteps, double tolerance,
+			DistanceType distanceType, Executor executor) {
+		this.coarse = coarse;
+		this.fine = fine;
+		this.fixed = fixed;
+		this.coarseSteps = coarseSteps;
+		this.tolerance = tolerance;
+		this.distanceType = distanceType;
+		this.executor = executor;
+		kMeans = new KMeans(coarse, initial, fixed, distanceType, executor);
+	}
+
+	@Override
+	public double step() {
+		if (cells == null && coarseSteps <= 0) {
+			refine();
+		}
+		final double shift = kMeans.step();
+		if (cells == null) {
+			coarseSteps--;
+			if (shift <= tolerance) {
+				refine();
+				return kMeans.step();
+			}
+		} else if (shift <= tolerance && moved()) {
+			refine();
+			return kMeans.step();
+		}
+		return shift;
+	}
+
+	/**
+	 * @return whether a centroid has left the cell it was refined around
+	 */
+	private boolean moved() {
+		final List<double[]> centroids = kMeans.centroids();
+		for (int j = fixed; j < cells.length; j++) {
+			final double[] lab = centroids.get(j);
+			if (coarse.cellOf(lab[0], lab[1], lab[2]) != cells[j]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Continues clustering on a space refined around the current centroids.
+	 */
+	private void refine() {
+		final List<double[]> centroids = kMeans.centroids();
+		cells = new int[centroids.size()];
+		for (int j = 0; j < cells.length; j++) {
+			final double[] lab = centroids.get(j);
+			cells[j] = coarse.cellOf(lab[0], lab[1], lab[2]);
+		}
+		final SampleSpace refined = coarse.refine(fine, cells, cells.length, RADIUS);
+		kMeans = new KMeans(refined, centroids, fixed, distanceType, executor);
+	}
+
+	/**
+	 * @return whether clustering has moved on to a refined space
+	 */
+	boolean refined() {
+		return cells != null;
+	}
+
+	@Override
+	public int reassigned() {
+		return kMeans.reassigned();
+	}
+
+	@Override
+	public long distanceEvaluations() {
+		return kMeans.distanceEvaluations();
+	}
+
+	@Override
+	public List<double[]> palette() {
+		return kMeans.centroids();
+	}
+
+}
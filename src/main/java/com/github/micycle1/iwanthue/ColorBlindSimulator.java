@@ -1,8 +1,39 @@
 package com.github.micycle1.iwanthue;
 
-class ColorBlindSimulator {
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
 
-	enum ConfusionType {
+/**
+ * Simulates how colors appear with a color vision deficiency.
+ * <p>
+ * Whole images (or ARGB buffers) are simulated in RGB, without Lab conversion,
+ * in tiles that may run in parallel. Each tile caches the simulated colors of
+ * its distinct pixel colors, so flat regions (as in charts and screenshots)
+ * cost a lookup per pixel. Alpha is kept as is.
+ */
+public class ColorBlindSimulator {
+
+	/** Width and height of the tiles that images are simulated in. */
+	static final int TILE_SIZE = 256;
+	/** Number of slots of a tile's color cache, as a power of 2. */
+	private static final int CACHE_BITS = 12;
+	static final int CACHE_SIZE = 1 << CACHE_BITS;
+
+	/** Channel values [0..255], linearized with gamma 2.2. */
+	private static final double[] LINEAR = new double[256];
+
+	static {
+		for (int c = 0; c < 256; c++) {
+			LINEAR[c] = Math.pow(c / 255.0, 2.2);
+		}
+	}
+
+	/**
+	 * Color vision deficiencies, each with its confusion line.
+	 */
+	public enum ConfusionType {
 		PROTANOPIA(0.7465, 0.2535, 1.27345, -0.07389), DEUTERANOPIA(1.4, -0.4, 0.96843, 0.00333),
 		TRITANOPIA(0.1748, 0.0, 1.07678, -0.02274);
 		// Add other types as needed
@@ -13,7 +44,7 @@ class ColorBlindSimulator {
 			this.confusionLine = new ConfusionLine(x, y, m, yint);
 		}
 
-		public ConfusionLine getConfusionLine() {
+		ConfusionLine getConfusionLine() {
 			return confusionLine;
 		}
 	}
@@ -21,40 +52,154 @@ class ColorBlindSimulator {
 	private record ConfusionLine(double x, double y, double m, double yint) {
 	}
 
-//	private final Map<String, double[]> simulateCache = new HashMap<>();
-	
 	public static double[] simulate(double[] lab, ConfusionType type) {
 		return simulate(lab, type, 1);
 	}
 
 	public static double[] simulate(double[] lab, ConfusionType type, double amount) {
-		// Cache key
-//        String key = Arrays.toString(lab) + "-" + type + "-" + amount;
-//        if (simulateCache.containsKey(key)) {
-//            return simulateCache.get(key);
-//        }
-
-		// Get data from type
-		ConfusionLine confusionLine = type.getConfusionLine();
-
-		double confuseX = confusionLine.x;
-		double confuseY = confusionLine.y;
-		double confuseM = confusionLine.m;
-		double confuseYint = confusionLine.yint;
-
 		// Convert LAB to RGB
 		double[] rgb = Conversion.labToRgb(lab); // Assuming fromRGB() exists and correctly implemented
 		double sr = rgb[0];
 		double sg = rgb[1];
 		double sb = rgb[2];
-		double dr = sr; // destination color
-		double dg = sg;
-		double db = sb;
 
 		// Convert source color into XYZ color space
 		double powR = Math.pow(sr / 255.0, 2.2);
 		double powG = Math.pow(sg / 255.0, 2.2);
 		double powB = Math.pow(sb / 255.0, 2.2);
+		simulate(sr, sg, sb, powR, powG, powB, type.getConfusionLine(), amount, rgb);
+
+		// Convert RGB to LAB
+		double[] result = Conversion.rgbToLab(rgb);
+
+		return result;
+	}
+
+	/**
+	 * Simulates an image.
+	 *
+	 * @param image    image to simulate
+	 * @param type     color vision deficiency
+	 * @param amount   severity, from 0 (none) to 1 (full)
+	 * @param executor executor to split tiles across, or null to run on the
+	 *                 calling thread
+	 * @return a new ARGB image of the simulated colors
+	 */
+	public static BufferedImage simulate(BufferedImage image, ConfusionType type, double amount, Executor executor) {
+		final int width = image.getWidth();
+		final int height = image.getHeight();
+		final BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		final int[] out = ((DataBufferInt) result.getRaster().getDataBuffer()).getData();
+		final int columns = (width + TILE_SIZE - 1) / TILE_SIZE;
+		final int rows = (height + TILE_SIZE - 1) / TILE_SIZE;
+		Parallel.forEach(executor, columns * rows, tile -> {
+			final int x = (tile % columns) * TILE_SIZE;
+			final int y = (tile / columns) * TILE_SIZE;
+			final int w = Math.min(TILE_SIZE, width - x);
+			final int h = Math.min(TILE_SIZE, height - y);
+			final int[] argb = new int[w * h];
+			image.getRGB(x, y, w, h, argb, 0, w);
+			simulateTile(argb, 0, w, out, y * width + x, width, w, h, type.getConfusionLine(), amount);
+		});
+		return result;
+	}
+
+	/**
+	 * Simulates an image held in ARGB pixels, row by row.
+	 *
+	 * @param argb     ARGB pixels
+	 * @param out      output array for the simulated ARGB pixels; may be argb
+	 *                 itself
+	 * @param width    image width
+	 * @param height   image height
+	 * @param type     color vision deficiency
+	 * @param amount   severity, from 0 (none) to 1 (full)
+	 * @param executor executor to split tiles across, or null to run on the
+	 *                 calling thread
+	 */
+	public static void simulate(int[] argb, int[] out, int width, int height, ConfusionType type, double amount, Executor executor) {
+		if ((long) width * height > Math.min(argb.length, out.length)) {
+			throw new IllegalArgumentException("buffers hold fewer than " + width + " x " + height + " pixels");
+		}
+		final int columns = (width + TILE_SIZE - 1) / TILE_SIZE;
+		final int rows = (height + TILE_SIZE - 1) / TILE_SIZE;
+		Parallel.forEach(executor, columns * rows, tile -> {
+			final int x = (tile % columns) * TILE_SIZE;
+			final int y = (tile / columns) * TILE_SIZE;
+			final int offset = y * width + x;
+			simulateTile(argb, offset, width, out, offset, width, Math.min(TILE_SIZE, width - x), Math.min(TILE_SIZE, height - y),
+					type.getConfusionLine(), amount);
+		});
+	}
+
+	/**
+	 * Simulates a tile of pixels, through a cache of the tile's simulated colors:
+	 * an open-addressing table from RGB to simulated RGB, cleared when it fills
+	 * up.
+	 */
+	private static void simulateTile(int[] argb, int offset, int scanline, int[] out, int outOffset, int outScanline, int w, int h,
+			ConfusionLine confusionLine, double amount) {
+		final int[] keys = new int[CACHE_SIZE];
+		final int[] values = new int[CACHE_SIZE];
+		Arrays.fill(keys, -1);
+		int cached = 0;
+		final double[] rgb = new double[3];
+		int lastKey = -1;
+		int lastValue = 0;
+		for (int row = 0; row < h; row++) {
+			final int from = offset + row * scanline;
+			final int outFrom = outOffset + row * outScanline;
+			for (int column = 0; column < w; column++) {
+				final int pixel = argb[from + column];
+				final int key = pixel & 0xFFFFFF;
+				if (key != lastKey) {
+					int slot = (key * 0x9E3779B9) >>> (32 - CACHE_BITS);
+					while (keys[slot] != -1 && keys[slot] != key) {
+						slot = (slot + 1) & (CACHE_SIZE - 1);
+					}
+					if (keys[slot] == key) {
+						lastValue = values[slot];
+					} else {
+						final int r = key >>> 16;
+						final int g = (key >>> 8) & 0xFF;
+						final int b = key & 0xFF;
+						simulate(r, g, b, LINEAR[r], LINEAR[g], LINEAR[b], confusionLine, amount, rgb);
+						lastValue = (Conversion.clamp(rgb[0]) << 16) | (Conversion.clamp(rgb[1]) << 8) | Conversion.clamp(rgb[2]);
+						if (cached == CACHE_SIZE * 3 / 4) {
+							Arrays.fill(keys, -1);
+							cached = 0;
+							slot = (key * 0x9E3779B9) >>> (32 - CACHE_BITS);
+						}
+						keys[slot] = key;
+						values[slot] = lastValue;
+						cached++;
+					}
+					lastKey = key;
+				}
+				out[outFrom + column] = (pixel & 0xFF000000) | lastValue;
+			}
+		}
+	}
+
+	/**
+	 * Simulates an RGB color.
+	 *
+	 * @param sr   source red [0..255]
+	 * @param powR source red, linearized with gamma 2.2 (likewise green and blue)
+	 * @param out  output array for the simulated [r, g, b] color [0..255]
+	 */
+	private static void simulate(double sr, double sg, double sb, double powR, double powG, double powB, ConfusionLine confusionLine,
+			double amount, double[] out) {
+		// Get data from type
+		double confuseX = confusionLine.x;
+		double confuseY = confusionLine.y;
+		double confuseM = confusionLine.m;
+		double confuseYint = confusionLine.yint;
+
+		double dr; // destination color
+		double dg;
+		double db;
+
 		double X = powR * 0.412424 + powG * 0.357579 + powB * 0.180464; // RGB->XYZ (sRGB:D65)
 		double Y = powR * 0.212656 + powG * 0.715158 + powB * 0.0721856;
 		double Z = powR * 0.0193324 + powG * 0.119193 + powB * 0.950444;
@@ -125,12 +270,9 @@ class ColorBlindSimulator {
 		dg = sg / 255.0 * (1.0 - amount) + dg * amount;
 		db = sb / 255.0 * (1.0 - amount) + db * amount;
 
-		// Convert RGB to LAB
-		double[] result = Conversion.rgbToLab(new double[] { dr * 255.0, dg * 255.0, db * 255.0 });
-
-//        simulateCache.put(key, result);
-
-		return result;
+		out[0] = dr * 255.0;
+		out[1] = dg * 255.0;
+		out[2] = db * 255.0;
 	}
 
 	private static double max(double x1, double x2, double x3) {
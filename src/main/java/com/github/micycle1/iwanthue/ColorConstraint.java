@@ -0,0 +1,189 @@
+package com.github.micycle1.iwanthue;
+
+import java.util.List;
+
+/**
+ * A declarative restriction of the colors that palettes may contain, on the
+ * hue, chroma and lightness (HCL, the polar form of Lab) of colors, and
+ * combinations of such restrictions.
+ * <p>
+ * Unlike a filter predicate, constraints are values: equal constraints share
+ * cached k-means sample spaces, in which each constraint is compiled once into
+ * a bitmask over the sample grid. Testing a constraint needs no RGB
+ * conversion.
+ * <p>
+ * The presets are those of iWantHue.
+ *
+ * @see Settings#constraint(ColorConstraint)
+ */
+public sealed interface ColorConstraint permits ColorConstraint.Range, ColorConstraint.And, ColorConstraint.Or, ColorConstraint.Not {
+
+	/** iWantHue's default preset. */
+	ColorConstraint DEFAULT = hcl(0, 360, 30, 80, 35, 80);
+	/** All colors. */
+	ColorConstraint ALL = hcl(0, 360, 0, 100, 0, 100);
+	ColorConstraint COLORBLIND_FRIENDLY = hcl(0, 360, 40, 70, 15, 85);
+	ColorConstraint FANCY_LIGHT = hcl(0, 360, 15, 40, 70, 100);
+	ColorConstraint FANCY_DARK = hcl(0, 360, 8, 40, 7, 40);
+	ColorConstraint SHADES = hcl(0, 240, 0, 15, 0, 100);
+	ColorConstraint TARNISH = hcl(0, 360, 0, 15, 30, 70);
+	ColorConstraint PASTEL = hcl(0, 360, 0, 30, 70, 100);
+	ColorConstraint PIMP = hcl(0, 360, 30, 100, 25, 70);
+	ColorConstraint INTENSE = hcl(0, 360, 20, 100, 15, 80);
+	ColorConstraint FLUO = hcl(0, 300, 35, 100, 75, 100);
+	ColorConstraint RED_ROSES = hcl(330, 20, 10, 100, 35, 100);
+	ColorConstraint OCHRE_SAND = hcl(20, 60, 20, 50, 35, 100);
+	ColorConstraint YELLOW_LIME = hcl(60, 90, 10, 100, 35, 100);
+	ColorConstraint GREEN_MINT = hcl(90, 150, 10, 100, 35, 100);
+	ColorConstraint ICE_CUBE = hcl(160, 200, 0, 100, 35, 100);
+	ColorConstraint BLUE_OCEAN = hcl(220, 260, 8, 80, 0, 50);
+	ColorConstraint INDIGO_NIGHT = hcl(260, 290, 40, 100, 35, 100);
+	ColorConstraint PURPLE_WINE = hcl(290, 330, 0, 100, 0, 40);
+
+	/**
+	 * @return whether the Lab color satisfies this constraint
+	 */
+	boolean test(double l, double a, double b);
+
+	/**
+	 * @return whether the [L, a, b] color satisfies this constraint
+	 */
+	default boolean test(double[] lab) {
+		return test(lab[0], lab[1], lab[2]);
+	}
+
+	/**
+	 * @return a constraint satisfied by colors that satisfy both this and the
+	 *         other constraint
+	 */
+	default ColorConstraint and(ColorConstraint other) {
+		return new And(List.of(this, other));
+	}
+
+	/**
+	 * @return a constraint satisfied by colors that satisfy this or the other
+	 *         constraint
+	 */
+	default ColorConstraint or(ColorConstraint other) {
+		return new Or(List.of(this, other));
+	}
+
+	/**
+	 * @return a constraint satisfied by colors that do not satisfy this
+	 *         constraint
+	 */
+	default ColorConstraint negate() {
+		return new Not(this);
+	}
+
+	/**
+	 * Creates a range constraint, as iWantHue's presets are given.
+	 *
+	 * @param hueMin       minimum hue, in degrees [0, 360]
+	 * @param hueMax       maximum hue, in degrees [0, 360]; less than hueMin for a
+	 *                     range that wraps through 0 (red)
+	 * @param chromaMin    minimum chroma
+	 * @param chromaMax    maximum chroma
+	 * @param lightnessMin minimum lightness
+	 * @param lightnessMax maximum lightness
+	 */
+	static ColorConstraint hcl(double hueMin, double hueMax, double chromaMin, double chromaMax, double lightnessMin, double lightnessMax) {
+		return new Range(hueMin, hueMax, chromaMin, chromaMax, lightnessMin, lightnessMax);
+	}
+
+	/**
+	 * Colors within hue, chroma and lightness ranges (bounds inclusive). Hue is
+	 * atan2(b, a) in degrees [0, 360), which is 0 for neutral colors; a range
+	 * from 0 to 360 accepts every hue.
+	 */
+	record Range(double hueMin, double hueMax, double chromaMin, double chromaMax, double lightnessMin, double lightnessMax)
+			implements ColorConstraint {
+
+		public Range {
+			if (!(hueMin >= 0 && hueMin <= 360 && hueMax >= 0 && hueMax <= 360)) {
+				throw new IllegalArgumentException("hues must be within [0, 360]: " + hueMin + ", " + hueMax);
+			}
+			if (!(chromaMin <= chromaMax && lightnessMin <= lightnessMax)) {
+				throw new IllegalArgumentException("ranges must not be empty: chroma " + chromaMin + ".." + chromaMax + ", lightness "
+						+ lightnessMin + ".." + lightnessMax);
+			}
+		}
+
+		@Override
+		public boolean test(double l, double a, double b) {
+			if (!(l >= lightnessMin && l <= lightnessMax)) {
+				return false;
+			}
+			final double c = Math.sqrt(a * a + b * b);
+			if (!(c >= chromaMin && c <= chromaMax)) {
+				return false;
+			}
+			if (hueMin == 0 && hueMax == 360) {
+				return true;
+			}
+			double h = Math.toDegrees(Math.atan2(b, a));
+			if (h < 0) {
+				h += 360;
+			}
+			return hueMin <= hueMax ? h >= hueMin && h <= hueMax : h >= hueMin || h <= hueMax;
+		}
+	}
+
+	/**
+	 * Colors that satisfy all of the constraints.
+	 */
+	record And(List<ColorConstraint> constraints) implements ColorConstraint {
+
+		public And {
+			constraints = List.copyOf(constraints);
+		}
+
+		@Override
+		public boolean test(double l, double a, double b) {
+			for (ColorConstraint constraint : constraints) {
+				if (!constraint.test(l, a, b)) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Colors that satisfy any of the constraints.
+	 */
+	record Or(List<ColorConstraint> constraints) implements ColorConstraint {
+
+		public Or {
+			constraints = List.copyOf(constraints);
+		}
+
+		@Override
+		public boolean test(double l, double a, double b) {
+			for (ColorConstraint constraint : constraints) {
+				if (constraint.test(l, a, b)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Colors that do not satisfy the constraint.
+	 */
+	record Not(ColorConstraint constraint) implements ColorConstraint {
+
+		public Not {
+			if (constraint == null) {
+				throw new NullPointerException("constraint");
+			}
+		}
+
+		@Override
+		public boolean test(double l, double a, double b) {
+			return !constraint.test(l, a, b);
+		}
+	}
+
+}
@@ -3,12 +3,16 @@ package com.github.micycle1.iwanthue;
 import static com.github.micycle1.iwanthue.ColorBlindSimulator.ConfusionType;
 
 import java.util.Arrays;
+import java.util.List;
 
 class ColorDistance {
 
 	enum DistanceType {
-		// TODO add CIEDE2000
-		DEFAULT, EUCLIDEAN, CMC, COMPROMISE;
+		DEFAULT, EUCLIDEAN, CMC, COMPROMISE,
+		/** CIE Delta E 2000, with unit weighting factors. */
+		CIEDE2000,
+		/** {@link #COMPROMISE} weighting over CIEDE2000 rather than CMC. */
+		COMPROMISE_CIEDE2000;
 	}
 
 	public static double getColorDistance(double[] lab1, double[] lab2, DistanceType type) {
@@ -23,11 +27,75 @@ class ColorDistance {
 			case CMC :
 				return cmcDistance(lab1, lab2, 2, 1);
 			case COMPROMISE :
-				return compromiseDistance(lab1, lab2);
+				return compromiseDistance(lab1, lab2, DistanceType.CMC);
+			case CIEDE2000 :
+				return ciede2000(lab1, lab2);
+			case COMPROMISE_CIEDE2000 :
+				return compromiseDistance(lab1, lab2, DistanceType.CIEDE2000);
 		}
 		return 0;
 	}
 
+	/**
+	 * Computes the distance between two prepared colors. Equal to
+	 * {@link #getColorDistance(double[], double[], DistanceType)} of the two
+	 * colors, without re-simulating either of them.
+	 *
+	 * @param colors1 first set of colors
+	 * @param i       index of the first color
+	 * @param colors2 second set of colors
+	 * @param j       index of the second color
+	 * @param type    distance type; the sets must have been prepared with
+	 *                simulation if {@link PreparedColors#simulates(DistanceType)
+	 *                required} by it
+	 */
+	static double getColorDistance(PreparedColors colors1, int i, PreparedColors colors2, int j, DistanceType type) {
+		if (type == null) {
+			type = DistanceType.DEFAULT;
+		}
+
+		switch (type) {
+			case DEFAULT :
+			case EUCLIDEAN :
+				return euclidianDistance(colors1.l[i], colors1.a[i], colors1.b[i], colors2.l[j], colors2.a[j], colors2.b[j]);
+			case CMC :
+				return cmcDistance(colors1, i, colors2, j);
+			case COMPROMISE :
+				return compromiseDistance(colors1, i, colors2, j, DistanceType.CMC);
+			case CIEDE2000 :
+				return ciede2000(colors1, i, colors2, j);
+			case COMPROMISE_CIEDE2000 :
+				return compromiseDistance(colors1, i, colors2, j, DistanceType.CIEDE2000);
+		}
+		return 0;
+	}
+
+	/**
+	 * @return the minimum distance between any two colors of the palette, or
+	 *         infinity if it has fewer than two colors
+	 */
+	static double minDistance(List<double[]> palette, DistanceType type) {
+		return minDistance(palette, 0, type);
+	}
+
+	/**
+	 * @param fixed number of leading colors whose distances to each other are
+	 *              ignored
+	 * @return the minimum distance between any two colors of the palette, other
+	 *         than two of the leading colors, or infinity if there are none
+	 */
+	static double minDistance(List<double[]> palette, int fixed, DistanceType type) {
+		// prepared, so each color is simulated once rather than once per pair
+		final PreparedColors colors = PreparedColors.of(palette, PreparedColors.simulates(type));
+		double min = Double.POSITIVE_INFINITY;
+		for (int i = fixed; i < colors.size; i++) {
+			for (int j = 0; j < i; j++) {
+				min = Math.min(min, getColorDistance(colors, i, colors, j, type));
+			}
+		}
+		return min;
+	}
+
 	public static double getColorDistance(double[] lab1, double[] lab2, ConfusionType type) {
 		return distanceColorblind(lab1, lab2, type);
 
@@ -39,10 +107,13 @@ class ColorDistance {
 		return cmcDistance(lab1Cb, lab2Cb, 2, 1);
 	}
 
-	private static double compromiseDistance(double[] lab1, double[] lab2) {
-		double[] distances = new double[4]; // CMC + 3 colorblind types
+	/**
+	 * @param base distance between (simulated) colors: CMC or CIEDE2000
+	 */
+	private static double compromiseDistance(double[] lab1, double[] lab2, DistanceType base) {
+		double[] distances = new double[4]; // base + 3 colorblind types
 		double[] coeffs = new double[4];
-		distances[0] = cmcDistance(lab1, lab2, 2, 1);
+		distances[0] = getColorDistance(lab1, lab2, base);
 		coeffs[0] = 1000;
 
 		ConfusionType[] types = ConfusionType.values();
@@ -52,21 +123,8 @@ class ColorDistance {
 			double[] lab2Cb = ColorBlindSimulator.simulate(lab2, types[i]);
 
 			if (!(Arrays.stream(lab1Cb).anyMatch(Double::isNaN) || Arrays.stream(lab2Cb).anyMatch(Double::isNaN))) {
-				double c;
-				switch (types[i]) {
-					case PROTANOPIA :
-						c = 100;
-						break;
-					case DEUTERANOPIA :
-						c = 500;
-						break;
-					case TRITANOPIA :
-						c = 1;
-						break;
-					default :
-						c = 0;
-				}
-				distances[i + 1] = cmcDistance(lab1Cb, lab2Cb, 2, 1);
+				double c = compromiseWeight(types[i]);
+				distances[i + 1] = getColorDistance(lab1Cb, lab2Cb, base);
 				coeffs[i + 1] = c;
 			} else {
 				System.err.println("Colorblind sim failed.");
@@ -87,10 +145,51 @@ class ColorDistance {
 		return count == 0 ? 0 : total / count;
 	}
 
+	/**
+	 * Compromise distance of prepared colors; the same weighting as
+	 * {@link #compromiseDistance(double[], double[], DistanceType)}, using the
+	 * colors' simulated variants.
+	 */
+	private static double compromiseDistance(PreparedColors colors1, int i, PreparedColors colors2, int j, DistanceType base) {
+		double total = 1000 * getColorDistance(colors1, i, colors2, j, base);
+		double count = 1000;
+
+		ConfusionType[] types = ConfusionType.values();
+		for (int t = 0; t < types.length; t++) {
+			final PreparedColors cb1 = colors1.simulated[t];
+			final PreparedColors cb2 = colors2.simulated[t];
+			// If simulation failed (returned NaN), the type doesn't contribute
+			if (!(cb1.isNaN(i) || cb2.isNaN(j))) {
+				double c = compromiseWeight(types[t]);
+				total += c * getColorDistance(cb1, i, cb2, j, base);
+				count += c;
+			}
+		}
+
+		return count == 0 ? 0 : total / count;
+	}
+
+	private static double compromiseWeight(ConfusionType type) {
+		switch (type) {
+			case PROTANOPIA :
+				return 100;
+			case DEUTERANOPIA :
+				return 500;
+			case TRITANOPIA :
+				return 1;
+			default :
+				return 0;
+		}
+	}
+
 	private static double euclidianDistance(double[] lab1, double[] lab2) {
-		double delta0 = lab1[0] - lab2[0];
-		double delta1 = lab1[1] - lab2[1];
-		double delta2 = lab1[2] - lab2[2];
+		return euclidianDistance(lab1[0], lab1[1], lab1[2], lab2[0], lab2[1], lab2[2]);
+	}
+
+	private static double euclidianDistance(double L1, double a1, double b1, double L2, double a2, double b2) {
+		double delta0 = L1 - L2;
+		double delta1 = a1 - a2;
+		double delta2 = b1 - b2;
 		return Math.sqrt(delta0 * delta0 + delta1 * delta1 + delta2 * delta2);
 	}
 
@@ -103,34 +202,197 @@ class ColorDistance {
 	 * @return
 	 */
 	private static double cmcDistance(double[] lab1, double[] lab2, double l, double c) {
-		double L1 = lab1[0];
-		double L2 = lab2[0];
-		double a1 = lab1[1];
-		double a2 = lab2[1];
-		double b1 = lab1[2];
-		double b2 = lab2[2];
-
-		double C1 = Math.sqrt(Math.pow(a1, 2) + Math.pow(b1, 2));
-		double C2 = Math.sqrt(Math.pow(a2, 2) + Math.pow(b2, 2));
+		return cmcDistance(lab1[0], lab1[1], lab1[2], lab2[0], lab2[1], lab2[2], l, c);
+	}
+
+	private static double cmcDistance(double L1, double a1, double b1, double L2, double a2, double b2, double l, double c) {
+		double C1 = chroma(a1, b1);
+		double S_C = cmcSC(C1);
+		return cmcDistance(L1, a1, b1, C1, cmcSL(L1), S_C, cmcSH(a1, b1, C1, S_C), L2, a2, b2, chroma(a2, b2), l, c);
+	}
+
+	/**
+	 * CMC distance from per-color terms, which only depend on the first color
+	 * (besides the second color's chroma), so can be precomputed.
+	 */
+	private static double cmcDistance(double L1, double a1, double b1, double C1, double S_L, double S_C, double S_H, double L2, double a2,
+			double b2, double C2, double l, double c) {
 		double deltaC = C1 - C2;
 		double deltaL = L1 - L2;
 		double deltaa = a1 - a2;
 		double deltab = b1 - b2;
-		double deltaH = Math.sqrt(Math.pow(deltaa, 2) + Math.pow(deltab, 2) - Math.pow(deltaC, 2));
+		double deltaH = Math.sqrt(deltaa * deltaa + deltab * deltab - deltaC * deltaC);
+
+		double dL = deltaL / (l * S_L);
+		double dC = deltaC / (c * S_C);
+		double dH = deltaH / S_H;
+		return Math.sqrt(dL * dL + dC * dC + dH * dH);
+	}
+
+	/**
+	 * CMC distance between prepared colors, with l = 2 and c = 1.
+	 */
+	private static double cmcDistance(PreparedColors colors1, int i, PreparedColors colors2, int j) {
+		return cmcDistance(colors1.l[i], colors1.a[i], colors1.b[i], colors1.c[i], colors1.sl[i], colors1.sc[i], colors1.sh[i], colors2.l[j],
+				colors2.a[j], colors2.b[j], colors2.c[j], 2, 1);
+	}
+
+	static double chroma(double a, double b) {
+		return Math.sqrt(a * a + b * b);
+	}
+
+	/**
+	 * @return the CMC lightness weight S_L of a color
+	 */
+	static double cmcSL(double L) {
+		return (L < 16) ? 0.511 : (0.040975 * L / (1 + 0.01765 * L));
+	}
+
+	/**
+	 * @return the CMC chroma weight S_C of a color
+	 */
+	static double cmcSC(double C) {
+		return (0.0638 * C / (1 + 0.0131 * C)) + 0.638;
+	}
+
+	/**
+	 * @return the CMC hue weight S_H of a color
+	 */
+	static double cmcSH(double a, double b, double C, double S_C) {
+		double H = Math.atan2(b, a) * (180 / Math.PI);
+		while (H < 0) {
+			H += 360;
+		}
+
+		double F = Math.sqrt(Math.pow(C, 4) / (Math.pow(C, 4) + 1900));
+		double T = (164 <= H && H <= 345) ? (0.56 + Math.abs(0.2 * Math.cos(Math.toRadians(H + 168))))
+				: (0.36 + Math.abs(0.4 * Math.cos(Math.toRadians(H + 35))));
+		return S_C * (F * T + 1 - F);
+	}
+
+	private static double ciede2000(double[] lab1, double[] lab2) {
+		return ciede2000(lab1[0], lab1[1], lab1[2], chroma(lab1[1], lab1[2]), lab2[0], lab2[1], lab2[2], chroma(lab2[1], lab2[2]));
+	}
+
+	/**
+	 * CIEDE2000 distance between prepared colors, reusing their chroma.
+	 */
+	private static double ciede2000(PreparedColors colors1, int i, PreparedColors colors2, int j) {
+		return ciede2000(colors1.l[i], colors1.a[i], colors1.b[i], colors1.c[i], colors2.l[j], colors2.a[j], colors2.b[j], colors2.c[j]);
+	}
+
+	private static final double POW25_7 = 6103515625.0; // 25^7
+	private static final double COS_30 = Math.cos(Math.toRadians(30));
+	private static final double SIN_30 = Math.sin(Math.toRadians(30));
+	private static final double COS_6 = Math.cos(Math.toRadians(6));
+	private static final double SIN_6 = Math.sin(Math.toRadians(6));
+	private static final double COS_63 = Math.cos(Math.toRadians(63));
+	private static final double SIN_63 = Math.sin(Math.toRadians(63));
+
+	/**
+	 * CIEDE2000 (Sharma, Wu and Dalal's formulation), with kL = kC = kH = 1.
+	 * <p>
+	 * Rather than through hue angles, the hue difference and mean hue are found
+	 * from the colors' unit hue vectors: the mean hue is the direction of their
+	 * sum (the bisector of the shorter arc between the hues), and the hue
+	 * difference follows from the chord between them. This leaves
+	 * a single atan2 per pair, and the four cosines of the hue weighting T are
+	 * expanded from the mean hue's sine and cosine.
+	 *
+	 * @param C1 chroma of the first color
+	 * @param C2 chroma of the second color
+	 */
+	private static double ciede2000(double L1, double a1, double b1, double C1, double L2, double a2, double b2, double C2) {
+		final double meanC = (C1 + C2) / 2;
+		final double meanC2 = meanC * meanC;
+		final double meanC7 = meanC2 * meanC2 * meanC2 * meanC;
+		final double G = 0.5 * (1 - Math.sqrt(meanC7 / (meanC7 + POW25_7)));
+
+		final double a1p = (1 + G) * a1;
+		final double a2p = (1 + G) * a2;
+		final double C1p = Math.sqrt(a1p * a1p + b1 * b1);
+		final double C2p = Math.sqrt(a2p * a2p + b2 * b2);
 
-		double H1 = Math.atan2(b1, a1) * (180 / Math.PI);
-		while (H1 < 0) {
-			H1 += 360;
+		final double deltaL = L2 - L1;
+		final double deltaC = C2p - C1p;
+
+		// unit hue vectors (zero for a neutral color)
+		double u1x = 0;
+		double u1y = 0;
+		double u2x = 0;
+		double u2y = 0;
+		if (C1p != 0) {
+			u1x = a1p / C1p;
+			u1y = b1 / C1p;
+		}
+		if (C2p != 0) {
+			u2x = a2p / C2p;
+			u2y = b2 / C2p;
+		}
+		// 2 sin(dh / 2) is the length of the chord between the hue vectors; the
+		// hue difference takes the sign of the (shorter) rotation from hue 1 to 2
+		double deltaH = Math.sqrt(C1p * C2p) * Math.sqrt((u2x - u1x) * (u2x - u1x) + (u2y - u1y) * (u2y - u1y));
+		if (u1x * u2y - u1y * u2x < 0) {
+			deltaH = -deltaH;
+		}
+
+		// mean hue: the bisector of the hue vectors; with a zero chroma, it is the
+		// other color's hue
+		final double hx = u1x + u2x;
+		final double hy = u1y + u2y;
+		double cos1 = 1;
+		double sin1 = 0;
+		double meanh = 0;
+		if (hx != 0 || hy != 0) {
+			final double norm = Math.sqrt(hx * hx + hy * hy);
+			cos1 = hx / norm;
+			sin1 = hy / norm;
+			meanh = Math.atan2(hy, hx);
+			if (meanh < 0) {
+				meanh += 2 * Math.PI;
+			}
+		} else if (C1p != 0) {
+			// opposite hues (exactly 180 degrees apart): the mean of the hue angles
+			meanh = (hueAngle(a1p, b1) + hueAngle(a2p, b2)) / 2;
+			cos1 = Math.cos(meanh);
+			sin1 = Math.sin(meanh);
 		}
 
-		double F = Math.sqrt(Math.pow(C1, 4) / (Math.pow(C1, 4) + 1900));
-		double T = (164 <= H1 && H1 <= 345) ? (0.56 + Math.abs(0.2 * Math.cos(Math.toRadians(H1 + 168))))
-				: (0.36 + Math.abs(0.4 * Math.cos(Math.toRadians(H1 + 35))));
-		double S_L = (L1 < 16) ? 0.511 : (0.040975 * L1 / (1 + 0.01765 * L1));
-		double S_C = (0.0638 * C1 / (1 + 0.0131 * C1)) + 0.638;
-		double S_H = S_C * (F * T + 1 - F);
+		// T = 1 - 0.17 cos(h - 30) + 0.24 cos(2h) + 0.32 cos(3h + 6) - 0.20 cos(4h - 63)
+		final double cos2 = cos1 * cos1 - sin1 * sin1;
+		final double sin2 = 2 * sin1 * cos1;
+		final double cos3 = cos2 * cos1 - sin2 * sin1;
+		final double sin3 = sin2 * cos1 + cos2 * sin1;
+		final double cos4 = cos2 * cos2 - sin2 * sin2;
+		final double sin4 = 2 * sin2 * cos2;
+		final double T = 1 - 0.17 * (cos1 * COS_30 + sin1 * SIN_30) + 0.24 * cos2 + 0.32 * (cos3 * COS_6 - sin3 * SIN_6)
+				- 0.20 * (cos4 * COS_63 + sin4 * SIN_63);
 
-		return Math.sqrt(Math.pow(deltaL / (l * S_L), 2) + Math.pow(deltaC / (c * S_C), 2) + Math.pow(deltaH / S_H, 2));
+		final double x = (Math.toDegrees(meanh) - 275) / 25;
+		final double deltaTheta = Math.toRadians(30) * Math.exp(-x * x);
+		final double meanL = (L1 + L2) / 2;
+		final double meanCp = (C1p + C2p) / 2;
+		final double meanCp2 = meanCp * meanCp;
+		final double meanCp7 = meanCp2 * meanCp2 * meanCp2 * meanCp;
+		final double R_C = 2 * Math.sqrt(meanCp7 / (meanCp7 + POW25_7));
+		final double L50 = (meanL - 50) * (meanL - 50);
+		final double S_L = 1 + 0.015 * L50 / Math.sqrt(20 + L50);
+		final double S_C = 1 + 0.045 * meanCp;
+		final double S_H = 1 + 0.015 * meanCp * T;
+		final double R_T = -Math.sin(2 * deltaTheta) * R_C;
+
+		final double dL = deltaL / S_L;
+		final double dC = deltaC / S_C;
+		final double dH = deltaH / S_H;
+		return Math.sqrt(dL * dL + dC * dC + dH * dH + R_T * dC * dH);
+	}
+
+	/**
+	 * @return the hue angle of a color, in radians [0, 2pi)
+	 */
+	private static double hueAngle(double a, double b) {
+		final double h = Math.atan2(b, a);
+		return h < 0 ? h + 2 * Math.PI : h;
 	}
 
 	public static void main(String[] args) {
@@ -14,8 +14,32 @@ class Conversion {
 	static final double t2 = 0.12841855; // 3 * t1 * t1
 	static final double t3 = 0.008856452; // t1 * t1 * t1
 
+	/** Linear-light value of each 8-bit sRGB channel value. */
+	private static final double[] SRGB_TO_LINEAR = new double[256];
+
+	/** Number of intervals of the linear-light to sRGB table over [0, 1]. */
+	private static final int LINEAR_STEPS = 4096;
+	/** sRGB channel value [0..255] at each linear-light table point. */
+	private static final double[] LINEAR_TO_SRGB = new double[LINEAR_STEPS + 1];
+
+	static {
+		for (int i = 0; i < SRGB_TO_LINEAR.length; i++) {
+			SRGB_TO_LINEAR[i] = rgbToXyz(i);
+		}
+		for (int i = 0; i <= LINEAR_STEPS; i++) {
+			LINEAR_TO_SRGB[i] = xyzToRgb((double) i / LINEAR_STEPS);
+		}
+	}
+
 	public static boolean validateLab(double[] lab) {
-		double[] rgb = labToRgb(lab);
+		return Gamut.contains(lab[0], lab[1], lab[2]);
+	}
+
+	/**
+	 * @param rgb [r, g, b] color, as returned by {@link #labToRgb(double[])}
+	 * @return whether the color is within the RGB color space
+	 */
+	static boolean validateRgb(double[] rgb) {
 		double R = rgb[0];
 		double G = rgb[1];
 		double B = rgb[2];
@@ -28,6 +52,17 @@ class Conversion {
 	 * @return rgb [0..255]
 	 */
 	public static double[] labToRgb(double[] lab) {
+		return labToRgb(lab, new double[3]);
+	}
+
+	/**
+	 * Converts a Lab color into the given output array.
+	 * 
+	 * @param lab
+	 * @param rgb output array for rgb [0..255]
+	 * @return rgb
+	 */
+	static double[] labToRgb(double[] lab, double[] rgb) {
 		// Code from Chroma.js 2016
 		double l = lab[0];
 		double a = lab[1];
@@ -44,14 +79,17 @@ class Conversion {
 		double R = xyzToRgb(3.2404542 * x - 1.5371385 * y - 0.4985314 * z); // D65 -> sRGB
 		double G = xyzToRgb(-0.9692660 * x + 1.8760108 * y + 0.0415560 * z);
 		double B = xyzToRgb(0.0556434 * x - 0.2040259 * y + 1.0572252 * z);
-		return new double[] { R, G, B };
+		rgb[0] = R;
+		rgb[1] = G;
+		rgb[2] = B;
+		return rgb;
 	}
 
 	private static double xyzToRgb(double r) {
 		return (255 * ((r <= 0.00304) ? (12.92 * r) : (1.055 * Math.pow(r, 1 / 2.4) - 0.055)));
 	}
 
-	private static double labToXyz(double t) {
+	static double labToXyz(double t) {
 		return (t > t1) ? (t * t * t) : (t2 * (t - t0));
 	}
 
@@ -86,4 +124,120 @@ class Conversion {
 	private static double xyzToLab(double t) {
 		return (t > t3) ? Math.pow(t, 1 / 3.0) : (t / t2 + t0);
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Converts Lab colors into RGB. Colors are interleaved in both arrays, as [L,
+	 * a, b, L, a, b, ...] and [r, g, b, r, g, b, ...].
+	 * <p>
+	 * Gamma encoding uses an interpolated table for in-gamut channels, so results
+	 * are within 0.01 of {@link #labToRgb(double[])}.
+	 *
+	 * @param lab   Lab colors
+	 * @param rgb   output array for rgb [0..255] colors
+	 * @param count number of colors
+	 */
+	public static void labToRgb(double[] lab, double[] rgb, int count) {
+		for (int i = 0, n = 3 * count; i < n; i += 3) {
+			labToRgb(lab, i, rgb, i);
+		}
+	}
+
+	private static void labToRgb(double[] lab, int i, double[] rgb, int j) {
+		final double y = (lab[i] + 16) / 116;
+		final double x = Double.isNaN(lab[i + 1]) ? y : (y + lab[i + 1] / 500);
+		final double z = Double.isNaN(lab[i + 2]) ? y : (y - lab[i + 2] / 200);
+		final double Y = Yn * labToXyz(y);
+		final double X = Xn * labToXyz(x);
+		final double Z = Zn * labToXyz(z);
+		rgb[j] = linearToSrgb(3.2404542 * X - 1.5371385 * Y - 0.4985314 * Z);
+		rgb[j + 1] = linearToSrgb(-0.9692660 * X + 1.8760108 * Y + 0.0415560 * Z);
+		rgb[j + 2] = linearToSrgb(0.0556434 * X - 0.2040259 * Y + 1.0572252 * Z);
+	}
+
+	/**
+	 * Converts Lab colors into opaque 8-bit ARGB colors, rounding and clamping
+	 * each channel.
+	 *
+	 * @param lab        Lab colors, interleaved as [L, a, b, L, a, b, ...]
+	 * @param labOffset  index of the first Lab color's L
+	 * @param argb       output array for ARGB colors
+	 * @param argbOffset index of the first output color
+	 * @param count      number of colors
+	 */
+	public static void labToArgb(double[] lab, int labOffset, int[] argb, int argbOffset, int count) {
+		final double[] rgb = new double[3];
+		for (int i = 0; i < count; i++) {
+			labToRgb(lab, labOffset + 3 * i, rgb, 0);
+			argb[argbOffset + i] = 0xFF000000 | (clamp(rgb[0]) << 16) | (clamp(rgb[1]) << 8) | clamp(rgb[2]);
+		}
+	}
+
+	static int clamp(double channel) {
+		return (int) Math.max(0, Math.min(255, Math.round(channel)));
+	}
+
+	/**
+	 * Converts RGB colors into Lab. Colors are interleaved in both arrays, as [r,
+	 * g, b, r, g, b, ...] and [L, a, b, L, a, b, ...]. Integer channel values are
+	 * linearized by table lookup; results are within 1e-9 of
+	 * {@link #rgbToLab(double[])}.
+	 *
+	 * @param rgb   rgb [0..255] colors
+	 * @param lab   output array for Lab colors
+	 * @param count number of colors
+	 */
+	public static void rgbToLab(double[] rgb, double[] lab, int count) {
+		for (int i = 0, n = 3 * count; i < n; i += 3) {
+			linearToLab(srgbToLinear(rgb[i]), srgbToLinear(rgb[i + 1]), srgbToLinear(rgb[i + 2]), lab, i);
+		}
+	}
+
+	/**
+	 * Converts 8-bit ARGB colors (such as image pixels) into Lab, ignoring alpha.
+	 * Channels are linearized by table lookup; results are within 1e-9 of
+	 * {@link #rgbToLab(double[])}.
+	 *
+	 * @param argb       ARGB colors
+	 * @param argbOffset index of the first color
+	 * @param lab        output array for Lab colors, interleaved as [L, a, b, L, a,
+	 *                   b, ...]
+	 * @param labOffset  index at which to write the first Lab color's L
+	 * @param count      number of colors
+	 */
+	public static void argbToLab(int[] argb, int argbOffset, double[] lab, int labOffset, int count) {
+		for (int i = 0; i < count; i++) {
+			final int c = argb[argbOffset + i];
+			linearToLab(SRGB_TO_LINEAR[(c >> 16) & 0xFF], SRGB_TO_LINEAR[(c >> 8) & 0xFF], SRGB_TO_LINEAR[c & 0xFF], lab,
+					labOffset + 3 * i);
+		}
+	}
+
+	private static void linearToLab(double r, double g, double b, double[] lab, int i) {
+		final double x = cbrtToLab((0.4124564 * r + 0.3575761 * g + 0.1804375 * b) / Xn);
+		final double y = cbrtToLab((0.2126729 * r + 0.7151522 * g + 0.0721750 * b) / Yn);
+		final double z = cbrtToLab((0.0193339 * r + 0.1191920 * g + 0.9503041 * b) / Zn);
+		lab[i] = 116 * y - 16;
+		lab[i + 1] = 500 * (x - y);
+		lab[i + 2] = 200 * (y - z);
+	}
+
+	private static double cbrtToLab(double t) {
+		return (t > t3) ? Math.cbrt(t) : (t / t2 + t0);
+	}
+
+	private static double srgbToLinear(double c) {
+		final int i = (int) c;
+		return (i == c && i >= 0 && i <= 255) ? SRGB_TO_LINEAR[i] : rgbToXyz(c);
+	}
+
+	private static double linearToSrgb(double r) {
+		if (r >= 0 && r <= 1) {
+			final double x = r * LINEAR_STEPS;
+			final int i = Math.min((int) x, LINEAR_STEPS - 1);
+			final double f = x - i;
+			return LINEAR_TO_SRGB[i] + f * (LINEAR_TO_SRGB[i + 1] - LINEAR_TO_SRGB[i]);
+		}
+		// out of gamut; compute exactly so that gamut checks agree with labToRgb
+		return xyzToRgb(r);
+	}
+}
@@ -0,0 +1,91 @@
+package com.github.micycle1.iwanthue;
+
+/**
+ * Bulk distance kernels, which compute the distances from a run of prepared
+ * colors to a single color. Results are bitwise equal to
+ * {@link ColorDistance#getColorDistance(PreparedColors, int, PreparedColors, int, ColorDistance.DistanceType)
+ * getColorDistance} of each pair, with the run's colors first.
+ * <p>
+ * This class is the scalar implementation. If the optional iwanthue-vector
+ * module is on the class path and the {@code jdk.incubator.vector} module is
+ * available (with {@code --add-modules jdk.incubator.vector}), its Vector API
+ * implementation is used instead; setting the system property
+ * {@value #SCALAR_PROPERTY} to true forces the scalar implementation.
+ */
+class DistanceKernels {
+
+	static final String SCALAR_PROPERTY = "iwanthue.scalarKernels";
+	private static final String VECTOR_CLASS = "com.github.micycle1.iwanthue.VectorKernels";
+
+	private static final class Holder {
+		static final DistanceKernels INSTANCE = load();
+	}
+
+	/**
+	 * @return the kernels to use: vectorized if available, else scalar
+	 */
+	static DistanceKernels get() {
+		return Holder.INSTANCE;
+	}
+
+	private static DistanceKernels load() {
+		if (!Boolean.getBoolean(SCALAR_PROPERTY)) {
+			try {
+				return (DistanceKernels) Class.forName(VECTOR_CLASS).getDeclaredConstructor().newInstance();
+			} catch (ReflectiveOperationException | LinkageError e) {
+				// module absent, or the incubator module is not enabled
+			}
+		}
+		return new DistanceKernels();
+	}
+
+	/**
+	 * @return whether these kernels are vectorized
+	 */
+	boolean vectorized() {
+		return false;
+	}
+
+	/**
+	 * Computes Euclidean distances from colors [from, to) to a color.
+	 *
+	 * @param out output, indexed from 0 (by color index - from)
+	 */
+	void euclidean(PreparedColors colors, int from, int to, double l, double a, double b, double[] out) {
+		final double[] cl = colors.l;
+		final double[] ca = colors.a;
+		final double[] cb = colors.b;
+		for (int i = from; i < to; i++) {
+			final double delta0 = cl[i] - l;
+			final double delta1 = ca[i] - a;
+			final double delta2 = cb[i] - b;
+			out[i - from] = Math.sqrt(delta0 * delta0 + delta1 * delta1 + delta2 * delta2);
+		}
+	}
+
+	/**
+	 * Computes CMC (l = 2, c = 1) distances from colors [from, to) to color j of
+	 * another set. CMC is asymmetric: the weights are those of the run's colors.
+	 *
+	 * @param out output, indexed from 0 (by color index - from)
+	 */
+	void cmc(PreparedColors colors, int from, int to, PreparedColors other, int j, double[] out) {
+		final double L2 = other.l[j];
+		final double a2 = other.a[j];
+		final double b2 = other.b[j];
+		final double C2 = other.c[j];
+		for (int i = from; i < to; i++) {
+			final double deltaC = colors.c[i] - C2;
+			final double deltaL = colors.l[i] - L2;
+			final double deltaa = colors.a[i] - a2;
+			final double deltab = colors.b[i] - b2;
+			final double deltaH = Math.sqrt(deltaa * deltaa + deltab * deltab - deltaC * deltaC);
+
+			final double dL = deltaL / (2 * colors.sl[i]);
+			final double dC = deltaC / colors.sc[i];
+			final double dH = deltaH / colors.sh[i];
+			out[i - from] = Math.sqrt(dL * dL + dC * dC + dH * dH);
+		}
+	}
+
+}
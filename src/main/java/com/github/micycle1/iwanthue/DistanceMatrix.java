@@ -0,0 +1,177 @@
+package com.github.micycle1.iwanthue;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import com.github.micycle1.iwanthue.ColorBlindSimulator.ConfusionType;
+import com.github.micycle1.iwanthue.ColorDistance.DistanceType;
+
+/**
+ * The pairwise distances of a palette, as a condensed matrix: the upper
+ * triangle (i &lt; j) in row-major order, n(n-1)/2 values.
+ * <p>
+ * Colors are {@link PreparedColors prepared} once, so colorblind simulation
+ * runs once per color rather than per pair. The triangle is computed in square
+ * tiles of {@value #TILE} by {@value #TILE} colors, whose colors stay in cache
+ * while their pairs are evaluated; tiles may run in parallel, and results do
+ * not depend on the executor.
+ * <p>
+ * Some distances (such as CMC) are not symmetric: like
+ * {@link ColorDistance#minDistance(List, DistanceType)}, the distance of a pair
+ * is from its later color to its earlier color. Unsimulable colors have NaN
+ * distances under a {@link ConfusionType}.
+ */
+public final class DistanceMatrix {
+
+	/** Colors per side of a tile. */
+	static final int TILE = 64;
+
+	private final int n;
+	private final double[] distances;
+
+	private DistanceMatrix(int n, double[] distances) {
+		this.n = n;
+		this.distances = distances;
+	}
+
+	/**
+	 * Computes the distance matrix of a palette.
+	 *
+	 * @param palette  colors, as [L, a, b] vectors
+	 * @param type     distance type
+	 * @param executor executor to split tiles across, or null to run on the
+	 *                 calling thread
+	 */
+	public static DistanceMatrix of(List<double[]> palette, DistanceType type, Executor executor) {
+		final DistanceType t = type == null ? DistanceType.DEFAULT : type;
+		return compute(PreparedColors.of(palette, PreparedColors.simulates(t)), t, executor);
+	}
+
+	/**
+	 * Computes the distance matrix of a palette as seen with a color vision
+	 * deficiency: the CMC distances between the simulated colors, as
+	 * {@link ColorDistance#getColorDistance(double[], double[], ConfusionType)}.
+	 *
+	 * @param palette  colors, as [L, a, b] vectors
+	 * @param type     color vision deficiency
+	 * @param executor executor to split tiles across, or null to run on the
+	 *                 calling thread
+	 */
+	public static DistanceMatrix of(List<double[]> palette, ConfusionType type, Executor executor) {
+		return compute(PreparedColors.of(palette, true).simulated[type.ordinal()], DistanceType.CMC, executor);
+	}
+
+	static DistanceMatrix compute(PreparedColors colors, DistanceType type, Executor executor) {
+		final int n = colors.size;
+		final double[] distances = new double[(int) condensedSize(n)];
+		final int tiles = (n + TILE - 1) / TILE;
+		// tiles of the upper triangle, row by row
+		final int[] tileRow = new int[tiles * (tiles + 1) / 2];
+		final int[] tileColumn = new int[tileRow.length];
+		int t = 0;
+		for (int r = 0; r < tiles; r++) {
+			for (int c = r; c < tiles; c++, t++) {
+				tileRow[t] = r;
+				tileColumn[t] = c;
+			}
+		}
+		Parallel.forEach(executor, tileRow.length, tile -> {
+			final int iFrom = tileRow[tile] * TILE;
+			final int iTo = Math.min(n, iFrom + TILE);
+			final int jFrom = tileColumn[tile] * TILE;
+			final int jTo = Math.min(n, jFrom + TILE);
+			for (int i = iFrom; i < iTo; i++) {
+				final int row = index(n, i, i + 1);
+				for (int j = Math.max(jFrom, i + 1); j < jTo; j++) {
+					distances[row + j - i - 1] = ColorDistance.getColorDistance(colors, j, colors, i, type);
+				}
+			}
+		});
+		return new DistanceMatrix(n, distances);
+	}
+
+	private static long condensedSize(int n) {
+		final long size = (long) n * (n - 1) / 2;
+		if (size > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("too many colors for a condensed matrix: " + n);
+		}
+		return size;
+	}
+
+	/**
+	 * @return the condensed index of the pair i &lt; j
+	 */
+	private static int index(int n, int i, int j) {
+		return (int) ((long) n * i - (long) i * (i + 1) / 2 + (j - i - 1));
+	}
+
+	/**
+	 * @return number of colors
+	 */
+	public int size() {
+		return n;
+	}
+
+	/**
+	 * @return the distance between two colors (in either order); 0 if they are
+	 *         the same color index
+	 */
+	public double get(int i, int j) {
+		if (i < 0 || j < 0 || i >= n || j >= n) {
+			throw new IndexOutOfBoundsException("(" + i + ", " + j + ") of " + n);
+		}
+		if (i == j) {
+			return 0;
+		}
+		return i < j ? distances[index(n, i, j)] : distances[index(n, j, i)];
+	}
+
+	/**
+	 * @return a copy of the condensed matrix: the distances of pairs (0, 1), (0,
+	 *         2), ..., (0, n-1), (1, 2), ...
+	 */
+	public double[] condensed() {
+		return distances.clone();
+	}
+
+	/**
+	 * @return the closest pair of colors, ignoring NaN distances, or null if
+	 *         there is none. Ties resolve to the first pair in condensed order.
+	 */
+	public PaletteStats.Pair closestPair() {
+		int best = -1;
+		for (int k = 0; k < distances.length; k++) {
+			final double d = distances[k];
+			if (!Double.isNaN(d) && (best < 0 || d < distances[best])) {
+				best = k;
+			}
+		}
+		if (best < 0) {
+			return null;
+		}
+		// find the row of the condensed index
+		int i = 0;
+		while (i + 2 < n && index(n, i + 1, i + 2) <= best) {
+			i++;
+		}
+		final int j = best - index(n, i, i + 1) + i + 1;
+		return new PaletteStats.Pair(i, j, distances[best]);
+	}
+
+	/**
+	 * @return the mean distance over all pairs, ignoring NaN distances; NaN if
+	 *         there are none
+	 */
+	public double mean() {
+		double sum = 0;
+		long count = 0;
+		for (double d : distances) {
+			if (!Double.isNaN(d)) {
+				sum += d;
+				count++;
+			}
+		}
+		return count == 0 ? Double.NaN : sum / count;
+	}
+
+}
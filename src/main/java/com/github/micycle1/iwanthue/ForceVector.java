@@ -0,0 +1,532 @@
+package com.github.micycle1.iwanthue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Executor;
+import java.util.function.Predicate;
+import java.util.random.RandomGenerator;
+
+import com.github.micycle1.iwanthue.ColorDistance.DistanceType;
+
+/**
+ * Force-vector palette layout: colors repel each other with a force inversely
+ * proportional to the square of their distance, and move along it while they
+ * stay valid.
+ * <p>
+ * Forces are computed one of three ways:
+ * <ul>
+ * <li>exactly over all pairs on the calling thread, as originally;</li>
+ * <li>exactly per color across an executor (from
+ * {@value #PARALLEL_THRESHOLD} colors), summing each color's forces in the same
+ * order as the serial loop;</li>
+ * <li>approximately with a Barnes-Hut octree in Lab space (from
+ * {@value #BARNES_HUT_THRESHOLD} colors), where distant groups of colors act as
+ * their center of mass.</li>
+ * </ul>
+ * Layout stops early once the total displacement of a step drops to the
+ * tolerance.
+ * <p>
+ * The first colors may be fixed: they repel the others, but never move.
+ */
+final class ForceVector implements Optimizer {
+
+	/** Minimum number of colors for which to compute exact forces in parallel. */
+	static final int PARALLEL_THRESHOLD = 64;
+	/** Minimum number of colors for which to approximate forces with an octree. */
+	static final int BARNES_HUT_THRESHOLD = 256;
+	/**
+	 * Barnes-Hut opening angle: octree cells smaller than this fraction of their
+	 * distance act as a single body.
+	 */
+	static final double THETA = 0.5;
+
+	private static final int BLOCK_SIZE = 32;
+	private static final double REPULSION = 100;
+	private static final double SPEED = 100;
+
+	private final int n;
+	/** Number of leading colors that do not move. */
+	private final int fixed;
+	private final Predicate<double[]> filter;
+	private final ColorConstraint constraint;
+	private final DistanceType distanceType;
+	private final Executor executor;
+	private final RandomGenerator random;
+
+	private final double[][] colors;
+	private final PreparedColors prepared;
+	private final double[] vectors;
+	private final long[] jitterSeeds;
+	/** Bodies each color was repelled by in the last approximate step. */
+	private final int[] repulsions;
+	private final double[] rgb = new double[3];
+	private Octree octree;
+
+	/** Statistics of the last step. */
+	private int moved;
+	private long evaluations;
+
+	/**
+	 * @param colors       initial colors, as [L, a, b] arrays
+	 * @param filter       filter on [r, g, b] colors; may be null
+	 * @param distanceType distance function to use
+	 * @param executor     executor to split force computation across, or null
+	 * @param random       source of the jitter applied to coincident colors
+	 */
+	ForceVector(List<double[]> colors, Predicate<double[]> filter, DistanceType distanceType, Executor executor, RandomGenerator random) {
+		this(colors, 0, filter, null, distanceType, executor, random);
+	}
+
+	/**
+	 * @param colors       initial colors, as [L, a, b] arrays
+	 * @param fixed        number of leading colors that do not move
+	 * @param filter       filter on [r, g, b] colors; may be null
+	 * @param constraint   constraint on colors; may be null
+	 * @param distanceType distance function to use
+	 * @param executor     executor to split force computation across, or null
+	 * @param random       source of the jitter applied to coincident colors
+	 */
+	ForceVector(List<double[]> colors, int fixed, Predicate<double[]> filter, ColorConstraint constraint, DistanceType distanceType,
+			Executor executor, RandomGenerator random) {
+		n = colors.size();
+		this.fixed = fixed;
+		this.filter = filter;
+		this.constraint = constraint;
+		this.distanceType = distanceType == null ? DistanceType.DEFAULT : distanceType;
+		this.executor = executor;
+		this.random = random;
+		this.colors = new double[n][];
+		for (int i = 0; i < n; i++) {
+			this.colors[i] = colors.get(i).clone();
+		}
+		vectors = new double[3 * n];
+		prepared = new PreparedColors(n, PreparedColors.simulates(this.distanceType));
+		jitterSeeds = new long[n];
+		repulsions = new int[n];
+	}
+
+	/**
+	 * Runs a single step.
+	 *
+	 * @return the total displacement of the colors
+	 */
+	@Override
+	public double step() {
+		computeForces(n >= BARNES_HUT_THRESHOLD);
+		return applyForces();
+	}
+
+	/**
+	 * Computes the force on each color, approximately with the octree or exactly.
+	 */
+	void computeForces(boolean approximate) {
+		Arrays.fill(vectors, 0);
+		final int blocks = (n + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		Parallel.forEach(executor, blocks, this::prepare);
+		prepareJitter();
+		if (approximate) {
+			octree = Octree.build(colors, octree, prepared.simulated != null);
+			Arrays.fill(repulsions, 0);
+			Parallel.forEach(executor, blocks, this::approximateForces);
+			evaluations = 0;
+			for (int count : repulsions) {
+				evaluations += count;
+			}
+		} else if (executor != null && n >= PARALLEL_THRESHOLD) {
+			Parallel.forEach(executor, blocks, this::exactForces);
+			evaluations = (long) (n - fixed) * (n - 1);
+		} else {
+			pairwiseForces();
+			evaluations = (long) n * (n - 1) / 2 - (long) fixed * (fixed - 1) / 2;
+		}
+	}
+
+	/**
+	 * @return the forces last computed, as consecutive [L, a, b] vectors
+	 */
+	double[] forces() {
+		return vectors.clone();
+	}
+
+	@Override
+	public int reassigned() {
+		return moved;
+	}
+
+	@Override
+	public long distanceEvaluations() {
+		return evaluations;
+	}
+
+	/**
+	 * Prepares the colors of a block for distance evaluation, so that each is
+	 * simulated once per step rather than once per pair.
+	 */
+	private void prepare(int block) {
+		final int to = Math.min(n, (block + 1) * BLOCK_SIZE);
+		for (int i = block * BLOCK_SIZE; i < to; i++) {
+			prepared.set(i, colors[i][0], colors[i][1], colors[i][2]);
+		}
+	}
+
+	/**
+	 * Computes the forces of all pairs, applying each to both colors.
+	 */
+	private void pairwiseForces() {
+		SplittableRandom[] jitters = null;
+		// pairs of fixed colors are skipped
+		for (int i = fixed; i < n; i++) {
+			double[] colorA = colors[i];
+			for (int j = 0; j < i; j++) {
+				double[] colorB = colors[j];
+
+				// repulsion force
+				double dl = colorA[0] - colorB[0];
+				double da = colorA[1] - colorB[1];
+				double db = colorA[2] - colorB[2];
+				double d = ColorDistance.getColorDistance(prepared, i, prepared, j, distanceType);
+				if (d > 0) {
+					double force = REPULSION / Math.pow(d, 2);
+
+					vectors[3 * i] += dl * force / d;
+					vectors[3 * i + 1] += da * force / d;
+					vectors[3 * i + 2] += db * force / d;
+
+					vectors[3 * j] -= dl * force / d;
+					vectors[3 * j + 1] -= da * force / d;
+					vectors[3 * j + 2] -= db * force / d;
+				} else {
+					// Jitter (the later color if the earlier one is fixed)
+					final int jittered = j < fixed ? i : j;
+					if (jitters == null) {
+						jitters = new SplittableRandom[n];
+					}
+					if (jitters[jittered] == null) {
+						jitters[jittered] = new SplittableRandom(jitterSeeds[jittered]);
+					}
+					final SplittableRandom jitter = jitters[jittered];
+					vectors[3 * jittered] += 2 - 4 * jitter.nextDouble();
+					vectors[3 * jittered + 1] += 2 - 4 * jitter.nextDouble();
+					vectors[3 * jittered + 2] += 2 - 4 * jitter.nextDouble();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Draws a jitter seed per color, so that jitter does not depend on the order
+	 * colors are processed in, nor on whether they are processed in parallel.
+	 */
+	private void prepareJitter() {
+		for (int i = 0; i < n; i++) {
+			jitterSeeds[i] = random.nextLong();
+		}
+	}
+
+	/**
+	 * Computes the exact force on each color of a block. Each color sums the same
+	 * terms in the same order as {@link #pairwiseForces()}.
+	 */
+	private void exactForces(int block) {
+		final int to = Math.min(n, (block + 1) * BLOCK_SIZE);
+		for (int i = Math.max(fixed, block * BLOCK_SIZE); i < to; i++) {
+			SplittableRandom jitter = null;
+			for (int j = 0; j < n; j++) {
+				if (j == i) {
+					continue;
+				}
+				// the pair is evaluated as (later color, earlier color)
+				final int a = Math.max(i, j);
+				final int b = Math.min(i, j);
+				final double[] colorA = colors[a];
+				final double[] colorB = colors[b];
+				double dl = colorA[0] - colorB[0];
+				double da = colorA[1] - colorB[1];
+				double db = colorA[2] - colorB[2];
+				double d = ColorDistance.getColorDistance(prepared, a, prepared, b, distanceType);
+				if (d > 0) {
+					double force = REPULSION / Math.pow(d, 2);
+					if (j < i) {
+						vectors[3 * i] += dl * force / d;
+						vectors[3 * i + 1] += da * force / d;
+						vectors[3 * i + 2] += db * force / d;
+					} else {
+						vectors[3 * i] -= dl * force / d;
+						vectors[3 * i + 1] -= da * force / d;
+						vectors[3 * i + 2] -= db * force / d;
+					}
+				} else if (j > i || j < fixed) {
+					// coincident pairs jitter the earlier color, unless it is fixed
+					if (jitter == null) {
+						jitter = new SplittableRandom(jitterSeeds[i]);
+					}
+					vectors[3 * i] += 2 - 4 * jitter.nextDouble();
+					vectors[3 * i + 1] += 2 - 4 * jitter.nextDouble();
+					vectors[3 * i + 2] += 2 - 4 * jitter.nextDouble();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Computes the approximate force on each color of a block using the octree.
+	 */
+	private void approximateForces(int block) {
+		final int to = Math.min(n, (block + 1) * BLOCK_SIZE);
+		for (int i = Math.max(fixed, block * BLOCK_SIZE); i < to; i++) {
+			octree.forces(this, i);
+		}
+	}
+
+	/**
+	 * Adds the repulsion of a body (a color, or a group of colors at their center
+	 * of mass) to the force on color i.
+	 *
+	 * @param bodies set of bodies
+	 * @param body   index of the body
+	 * @param mass   number of colors in the body
+	 */
+	void repel(int i, PreparedColors bodies, int body, int mass) {
+		final double[] color = colors[i];
+		double dl = color[0] - bodies.l[body];
+		double da = color[1] - bodies.a[body];
+		double db = color[2] - bodies.b[body];
+		// a pair of colors is evaluated as (later color, earlier color), as in the
+		// exact forces, since not every distance is symmetric
+		double d = bodies == prepared && body > i ? ColorDistance.getColorDistance(prepared, body, prepared, i, distanceType)
+				: ColorDistance.getColorDistance(prepared, i, bodies, body, distanceType);
+		repulsions[i]++;
+		if (d > 0) {
+			double force = mass * REPULSION / Math.pow(d, 2);
+			vectors[3 * i] += dl * force / d;
+			vectors[3 * i + 1] += da * force / d;
+			vectors[3 * i + 2] += db * force / d;
+		} else {
+			final SplittableRandom jitter = new SplittableRandom(jitterSeeds[i]);
+			jitterSeeds[i] = jitter.nextLong();
+			vectors[3 * i] += 2 - 4 * jitter.nextDouble();
+			vectors[3 * i + 1] += 2 - 4 * jitter.nextDouble();
+			vectors[3 * i + 2] += 2 - 4 * jitter.nextDouble();
+		}
+	}
+
+	private double applyForces() {
+		double total = 0;
+		moved = 0;
+		for (int i = fixed; i < n; i++) {
+			double[] color = colors[i];
+			double v0 = vectors[3 * i];
+			double v1 = vectors[3 * i + 1];
+			double v2 = vectors[3 * i + 2];
+			double displacement = SPEED * Math.sqrt(Math.pow(v0, 2) + Math.pow(v1, 2) + Math.pow(v2, 2));
+			if (displacement > 0) {
+				double ratio = SPEED * Math.min(0.1, displacement) / displacement;
+				double[] candidateLab = { color[0] + v0 * ratio, color[1] + v1 * ratio, color[2] + v2 * ratio };
+				if ((constraint == null || constraint.test(candidateLab))
+						&& (filter == null ? Gamut.contains(candidateLab[0], candidateLab[1], candidateLab[2])
+								: Gamut.toRgb(candidateLab, rgb) != null && filter.test(rgb))) {
+					colors[i] = candidateLab;
+					total += Math.min(0.1, displacement);
+					moved++;
+				}
+			}
+		}
+		return total;
+	}
+
+	@Override
+	public List<double[]> palette() {
+		return colors();
+	}
+
+	/**
+	 * @return the current colors, as new [L, a, b] arrays
+	 */
+	List<double[]> colors() {
+		List<double[]> list = new ArrayList<>(n);
+		for (double[] color : colors) {
+			list.add(color.clone());
+		}
+		return list;
+	}
+
+	/**
+	 * An octree over the colors, where each cell knows its number of colors and
+	 * their center of mass.
+	 */
+	private static final class Octree {
+
+		private static final int LEAF_SIZE = 4;
+		private static final int MAX_DEPTH = 24;
+
+		private final double[][] colors;
+		/** Center of mass of each node, prepared for distance evaluation. */
+		private PreparedColors bodies;
+		/** Color indices, grouped by leaf. */
+		private final int[] order;
+		private final int[] scratch;
+
+		// per-node data
+		private int nodes;
+		private double[] centerL = new double[64], centerA = new double[64], centerB = new double[64];
+		private double[] halfSize = new double[64];
+		private double[] massL = new double[64], massA = new double[64], massB = new double[64];
+		private int[] from = new int[64], to = new int[64];
+		/** Index of the first of eight consecutive children, or -1 for leaves. */
+		private int[] children = new int[64];
+
+		private Octree(double[][] colors, Octree previous) {
+			this.colors = colors;
+			order = previous != null && previous.order.length == colors.length ? previous.order : new int[colors.length];
+			scratch = previous != null && previous.scratch.length == colors.length ? previous.scratch : new int[colors.length];
+		}
+
+		static Octree build(double[][] colors, Octree previous, boolean simulate) {
+			Octree tree = new Octree(colors, previous);
+			double minL = Double.POSITIVE_INFINITY, minA = minL, minB = minL;
+			double maxL = Double.NEGATIVE_INFINITY, maxA = maxL, maxB = maxL;
+			for (int i = 0; i < colors.length; i++) {
+				tree.order[i] = i;
+				minL = Math.min(minL, colors[i][0]);
+				minA = Math.min(minA, colors[i][1]);
+				minB = Math.min(minB, colors[i][2]);
+				maxL = Math.max(maxL, colors[i][0]);
+				maxA = Math.max(maxA, colors[i][1]);
+				maxB = Math.max(maxB, colors[i][2]);
+			}
+			final double half = Math.max(maxL - minL, Math.max(maxA - minA, maxB - minB)) / 2 + 1e-9;
+			tree.build(tree.newNode((minL + maxL) / 2, (minA + maxA) / 2, (minB + maxB) / 2, half, 0, colors.length), 0);
+			tree.bodies = new PreparedColors(tree.nodes, simulate);
+			for (int node = 0; node < tree.nodes; node++) {
+				if (tree.children[node] >= 0) { // only inner nodes act as bodies
+					tree.bodies.set(node, tree.massL[node], tree.massA[node], tree.massB[node]);
+				}
+			}
+			return tree;
+		}
+
+		private int newNode(double l, double a, double b, double half, int first, int last) {
+			if (nodes == children.length) {
+				final int capacity = nodes * 2;
+				centerL = Arrays.copyOf(centerL, capacity);
+				centerA = Arrays.copyOf(centerA, capacity);
+				centerB = Arrays.copyOf(centerB, capacity);
+				halfSize = Arrays.copyOf(halfSize, capacity);
+				massL = Arrays.copyOf(massL, capacity);
+				massA = Arrays.copyOf(massA, capacity);
+				massB = Arrays.copyOf(massB, capacity);
+				from = Arrays.copyOf(from, capacity);
+				to = Arrays.copyOf(to, capacity);
+				children = Arrays.copyOf(children, capacity);
+			}
+			final int node = nodes++;
+			centerL[node] = l;
+			centerA[node] = a;
+			centerB[node] = b;
+			halfSize[node] = half;
+			from[node] = first;
+			to[node] = last;
+			children[node] = -1;
+			double sumL = 0, sumA = 0, sumB = 0;
+			for (int i = first; i < last; i++) {
+				final double[] color = colors[order[i]];
+				sumL += color[0];
+				sumA += color[1];
+				sumB += color[2];
+			}
+			final int count = last - first;
+			if (count > 0) {
+				massL[node] = sumL / count;
+				massA[node] = sumA / count;
+				massB[node] = sumB / count;
+			}
+			return node;
+		}
+
+		private void build(int node, int depth) {
+			final int first = from[node];
+			final int last = to[node];
+			if (last - first <= LEAF_SIZE || depth >= MAX_DEPTH) {
+				return;
+			}
+			// bucket colors by octant, keeping their relative order
+			final int[] counts = new int[9];
+			for (int i = first; i < last; i++) {
+				counts[octant(node, colors[order[i]]) + 1]++;
+			}
+			for (int o = 0; o < 8; o++) {
+				counts[o + 1] += counts[o];
+			}
+			final int[] offsets = counts.clone();
+			for (int i = first; i < last; i++) {
+				final int p = order[i];
+				scratch[first + offsets[octant(node, colors[p])]++] = p;
+			}
+			System.arraycopy(scratch, first, order, first, last - first);
+
+			// children are allocated consecutively, including empty ones
+			final double half = halfSize[node] / 2;
+			final int firstChild = nodes;
+			for (int o = 0; o < 8; o++) {
+				final double l = centerL[node] + ((o & 4) != 0 ? half : -half);
+				final double a = centerA[node] + ((o & 2) != 0 ? half : -half);
+				final double b = centerB[node] + ((o & 1) != 0 ? half : -half);
+				newNode(l, a, b, half, first + counts[o], first + counts[o + 1]);
+			}
+			children[node] = firstChild;
+			for (int o = 0; o < 8; o++) {
+				if (to[firstChild + o] > from[firstChild + o]) {
+					build(firstChild + o, depth + 1);
+				}
+			}
+		}
+
+		private int octant(int node, double[] color) {
+			return (color[0] >= centerL[node] ? 4 : 0) | (color[1] >= centerA[node] ? 2 : 0) | (color[2] >= centerB[node] ? 1 : 0);
+		}
+
+		/**
+		 * Accumulates the force on color i.
+		 */
+		void forces(ForceVector layout, int i) {
+			forces(layout, 0, i);
+		}
+
+		private void forces(ForceVector layout, int node, int i) {
+			final int count = to[node] - from[node];
+			if (count == 0) {
+				return;
+			}
+			final double[] color = colors[i];
+			if (children[node] < 0) {
+				for (int k = from[node]; k < to[node]; k++) {
+					final int j = order[k];
+					if (j != i) {
+						layout.repel(i, layout.prepared, j, 1);
+					}
+				}
+				return;
+			}
+			final double dl = color[0] - massL[node];
+			final double da = color[1] - massA[node];
+			final double db = color[2] - massB[node];
+			final double distance = Math.sqrt(dl * dl + da * da + db * db);
+			if (2 * halfSize[node] < THETA * distance && !contains(node, color)) {
+				layout.repel(i, bodies, node, count);
+			} else {
+				final int first = children[node];
+				for (int o = 0; o < 8; o++) {
+					forces(layout, first + o, i);
+				}
+			}
+		}
+
+		private boolean contains(int node, double[] color) {
+			final double h = halfSize[node];
+			return Math.abs(color[0] - centerL[node]) <= h && Math.abs(color[1] - centerA[node]) <= h && Math.abs(color[2] - centerB[node]) <= h;
+		}
+	}
+
+}
@@ -0,0 +1,123 @@
+package com.github.micycle1.iwanthue;
+
+/**
+ * The sRGB gamut in Lab space, precomputed as a bitmap over unit Lab cells (L
+ * 0..100, a and b -128..128) so that most validity checks are an array lookup.
+ * <p>
+ * Each cell is classified as inside, outside or on the gamut boundary by
+ * bounding the linear RGB of the whole cell (Lab to XYZ is monotonic in each
+ * coordinate), with a margin that absorbs rounding. Only colors in boundary
+ * cells, or outside the bitmap, are checked exactly, so results always agree
+ * with {@link Conversion#validateRgb(double[]) validateRgb}({@link
+ * Conversion#labToRgb(double[]) labToRgb}(lab)).
+ */
+final class Gamut {
+
+	private static final int OUTSIDE = 0;
+	private static final int INSIDE = 1;
+	private static final int BOUNDARY = 2;
+
+	private static final int L_CELLS = 100;
+	private static final int AB_MIN = -128;
+	private static final int AB_CELLS = 256;
+	/** Margin (in linear RGB) within which cells are checked exactly. */
+	private static final double EPSILON = 1e-7;
+
+	/** Linear RGB rows of the D65 XYZ to sRGB matrix. */
+	private static final double[][] XYZ_TO_RGB = { { 3.2404542, -1.5371385, -0.4985314 }, { -0.9692660, 1.8760108, 0.0415560 },
+			{ 0.0556434, -0.2040259, 1.0572252 } };
+
+	/** Cell states, two bits per cell; built on first use. */
+	private static final class Bitmap {
+		static final long[] CELLS = build();
+	}
+
+	private Gamut() {
+	}
+
+	/**
+	 * @return whether the Lab color is within the RGB color space
+	 */
+	static boolean contains(double l, double a, double b) {
+		final int state = state(l, a, b);
+		if (state != BOUNDARY) {
+			return state == INSIDE;
+		}
+		return Conversion.validateRgb(Conversion.labToRgb(new double[] { l, a, b }));
+	}
+
+	/**
+	 * Converts a Lab color into RGB if it is within the RGB color space. Colors in
+	 * cells wholly outside the gamut are rejected without being converted.
+	 *
+	 * @param lab [L, a, b] color
+	 * @param rgb output array for rgb [0..255]
+	 * @return rgb, or null if the color is outside the gamut (when rgb is left
+	 *         unspecified)
+	 */
+	static double[] toRgb(double[] lab, double[] rgb) {
+		final int state = state(lab[0], lab[1], lab[2]);
+		if (state == OUTSIDE) {
+			return null;
+		}
+		Conversion.labToRgb(lab, rgb);
+		return state == INSIDE || Conversion.validateRgb(rgb) ? rgb : null;
+	}
+
+	private static int state(double l, double a, double b) {
+		// negated comparisons also send NaN to the exact check
+		if (!(l >= 0 && l <= L_CELLS && a >= AB_MIN && a <= AB_MIN + AB_CELLS && b >= AB_MIN && b <= AB_MIN + AB_CELLS)) {
+			return BOUNDARY;
+		}
+		final int li = Math.min((int) l, L_CELLS - 1);
+		final int ai = Math.min((int) Math.floor(a) - AB_MIN, AB_CELLS - 1);
+		final int bi = Math.min((int) Math.floor(b) - AB_MIN, AB_CELLS - 1);
+		final int cell = (li * AB_CELLS + ai) * AB_CELLS + bi;
+		return (int) (Bitmap.CELLS[cell >>> 5] >>> ((cell & 31) << 1)) & 3;
+	}
+
+	private static long[] build() {
+		final long[] cells = new long[(L_CELLS * AB_CELLS * AB_CELLS + 31) >>> 5];
+		// X depends only on (L, a) and Z only on (L, b), so bound them per row
+		final double[] xLo = new double[AB_CELLS];
+		final double[] xHi = new double[AB_CELLS];
+		final double[] zLo = new double[AB_CELLS];
+		final double[] zHi = new double[AB_CELLS];
+		final double[] lo = new double[3];
+		final double[] hi = new double[3];
+		int cell = 0;
+		for (int li = 0; li < L_CELLS; li++) {
+			final double yMin = (li + 16) / 116.0;
+			final double yMax = (li + 17) / 116.0;
+			final double yLo = Conversion.Yn * Conversion.labToXyz(yMin);
+			final double yHi = Conversion.Yn * Conversion.labToXyz(yMax);
+			for (int i = 0; i < AB_CELLS; i++) {
+				final int v = AB_MIN + i;
+				xLo[i] = Conversion.Xn * Conversion.labToXyz(yMin + v / 500.0);
+				xHi[i] = Conversion.Xn * Conversion.labToXyz(yMax + (v + 1) / 500.0);
+				zLo[i] = Conversion.Zn * Conversion.labToXyz(yMin - (v + 1) / 200.0);
+				zHi[i] = Conversion.Zn * Conversion.labToXyz(yMax - v / 200.0);
+			}
+			for (int ai = 0; ai < AB_CELLS; ai++) {
+				for (int bi = 0; bi < AB_CELLS; bi++, cell++) {
+					int state = INSIDE;
+					for (int c = 0; c < 3; c++) {
+						final double[] m = XYZ_TO_RGB[c];
+						lo[c] = m[0] * (m[0] > 0 ? xLo[ai] : xHi[ai]) + m[1] * (m[1] > 0 ? yLo : yHi) + m[2] * (m[2] > 0 ? zLo[bi] : zHi[bi]);
+						hi[c] = m[0] * (m[0] > 0 ? xHi[ai] : xLo[ai]) + m[1] * (m[1] > 0 ? yHi : yLo) + m[2] * (m[2] > 0 ? zHi[bi] : zLo[bi]);
+						if (hi[c] < -EPSILON || lo[c] > 1 + EPSILON) {
+							state = OUTSIDE;
+							break;
+						}
+						if (lo[c] < EPSILON || hi[c] > 1 - EPSILON) {
+							state = BOUNDARY;
+						}
+					}
+					cells[cell >>> 5] |= (long) state << ((cell & 31) << 1);
+				}
+			}
+		}
+		return cells;
+	}
+
+}
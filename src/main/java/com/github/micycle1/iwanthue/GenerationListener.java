@@ -0,0 +1,20 @@
+package com.github.micycle1.iwanthue;
+
+/**
+ * Receives statistics of every iteration of palette generation, for monitoring
+ * convergence. Set with {@link Settings#listener(GenerationListener)}.
+ * <p>
+ * Attempts may run concurrently (see {@link Settings#attempts(int)}), in which
+ * case the listener is called from several threads at once.
+ */
+@FunctionalInterface
+public interface GenerationListener {
+
+	/**
+	 * Called after each k-means iteration or force-vector step.
+	 *
+	 * @param stats statistics of the iteration
+	 */
+	void iteration(IterationStats stats);
+
+}
@@ -0,0 +1,273 @@
+package com.github.micycle1.iwanthue;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import com.github.micycle1.iwanthue.ColorDistance.DistanceType;
+
+/**
+ * Extracts the dominant colors of an image, by k-means clustering of its
+ * colors.
+ * <p>
+ * Pixels are streamed in tiles into a color histogram of 15-bit RGB bins (5
+ * bits per channel), so that memory use does not depend on the image size.
+ * Each bin holds the number of its pixels and the sum of their colors, so
+ * k-means then clusters at most 32768 weighted colors (the mean color of each
+ * bin) rather than every pixel. Tiles are split across the settings'
+ * executor; histograms are integer sums, so results do not depend on it.
+ */
+public final class ImagePalette {
+
+	/** Width and height of the tiles that pixels are read in. */
+	static final int TILE_SIZE = 256;
+	/** Bits per RGB channel of a histogram bin. */
+	static final int BITS = 5;
+	static final int BINS = 1 << (3 * BITS);
+
+	private static final int SHIFT = 8 - BITS;
+
+	private ImagePalette() {
+	}
+
+	/**
+	 * Extracts the dominant colors of an image. Fully transparent pixels are
+	 * ignored.
+	 * <p>
+	 * Settings apply as to {@link iWantHue#generate(int, Settings) generate}: the
+	 * filter and constraint exclude colors (pixels whose bin's mean color they
+	 * reject are ignored), the quality is the maximum number of k-means iterations, the seed
+	 * makes the initial centroids reproducible, and the executor splits the work
+	 * across cores. Force mode and ultra precision do not apply.
+	 *
+	 * @param image       image to extract colors from
+	 * @param colorsCount maximum number of colors to extract
+	 * @param settings    extraction settings
+	 * @return list of [L,A,B] vectors, most dominant (by pixel count) first; fewer
+	 *         than colorsCount if the image has fewer distinct colors, and none
+	 *         if colorsCount is not positive
+	 */
+	public static List<double[]> extract(BufferedImage image, int colorsCount, Settings settings) {
+		if (colorsCount <= 0) {
+			return new ArrayList<>();
+		}
+		final Histogram histogram = histogram(image, settings.executor());
+		final SampleSpace samples = histogram.samples(settings.filter(), settings.constraint());
+		if (samples.size <= colorsCount) {
+			return byWeight(samples.weights.clone(), allOf(samples));
+		}
+
+		final SplittableRandom random = settings.seed() == null ? new SplittableRandom() : new SplittableRandom(settings.seed());
+		final List<double[]> initial = seeds(samples, colorsCount, settings.distanceType(), random);
+		final KMeans engine = new KMeans(samples, initial, 0, settings.distanceType(), settings.executor());
+		engine.run(Math.max(1, settings.quality()), settings.tolerance());
+		return byWeight(engine.weights(), engine.centroids());
+	}
+
+	/**
+	 * Builds the color histogram of an image.
+	 */
+	static Histogram histogram(BufferedImage image, Executor executor) {
+		final int width = image.getWidth();
+		final int height = image.getHeight();
+		final int columns = (width + TILE_SIZE - 1) / TILE_SIZE;
+		final int tiles = columns * ((height + TILE_SIZE - 1) / TILE_SIZE);
+
+		// a histogram per thread, each taking tiles as it goes to balance the load
+		final int threads = executor == null ? 1
+				: executor instanceof ForkJoinPool pool ? pool.getParallelism() : Runtime.getRuntime().availableProcessors();
+		final int parts = Math.max(1, Math.min(tiles, threads));
+		final Histogram[] partial = new Histogram[parts];
+		final AtomicInteger next = new AtomicInteger();
+		Parallel.forEach(executor, parts, part -> {
+			final Histogram histogram = new Histogram();
+			final int[] argb = new int[TILE_SIZE * TILE_SIZE];
+			for (int tile = next.getAndIncrement(); tile < tiles; tile = next.getAndIncrement()) {
+				final int x = (tile % columns) * TILE_SIZE;
+				final int y = (tile / columns) * TILE_SIZE;
+				final int w = Math.min(TILE_SIZE, width - x);
+				final int h = Math.min(TILE_SIZE, height - y);
+				image.getRGB(x, y, w, h, argb, 0, w);
+				histogram.add(argb, w * h);
+			}
+			partial[part] = histogram;
+		});
+		for (int part = 1; part < parts; part++) {
+			partial[0].add(partial[part]);
+		}
+		return partial[0];
+	}
+
+	/**
+	 * Pixel counts and color sums of 15-bit RGB bins.
+	 */
+	static final class Histogram {
+
+		final long[] counts = new long[BINS];
+		final long[] sumR = new long[BINS];
+		final long[] sumG = new long[BINS];
+		final long[] sumB = new long[BINS];
+
+		void add(int[] argb, int count) {
+			for (int i = 0; i < count; i++) {
+				final int c = argb[i];
+				if ((c >>> 24) == 0) {
+					continue; // fully transparent
+				}
+				final int r = (c >> 16) & 0xFF;
+				final int g = (c >> 8) & 0xFF;
+				final int b = c & 0xFF;
+				final int bin = ((r >> SHIFT) << (2 * BITS)) | ((g >> SHIFT) << BITS) | (b >> SHIFT);
+				counts[bin]++;
+				sumR[bin] += r;
+				sumG[bin] += g;
+				sumB[bin] += b;
+			}
+		}
+
+		void add(Histogram other) {
+			for (int bin = 0; bin < BINS; bin++) {
+				counts[bin] += other.counts[bin];
+				sumR[bin] += other.sumR[bin];
+				sumG[bin] += other.sumG[bin];
+				sumB[bin] += other.sumB[bin];
+			}
+		}
+
+		/**
+		 * @param filter     filter on [r, g, b] colors; may be null
+		 * @param constraint constraint on colors; may be null
+		 * @return the mean colors of the non-empty bins that pass the filter and
+		 *         constraint, weighted by their pixel counts
+		 */
+		SampleSpace samples(Predicate<double[]> filter, ColorConstraint constraint) {
+			final double[] rgb = new double[3 * BINS];
+			final double[] weights = new double[BINS];
+			final double[] color = new double[3];
+			int n = 0;
+			for (int bin = 0; bin < BINS; bin++) {
+				final long count = counts[bin];
+				if (count == 0) {
+					continue;
+				}
+				color[0] = (double) sumR[bin] / count;
+				color[1] = (double) sumG[bin] / count;
+				color[2] = (double) sumB[bin] / count;
+				if (filter != null && !filter.test(color)) {
+					continue;
+				}
+				System.arraycopy(color, 0, rgb, 3 * n, 3);
+				weights[n++] = count;
+			}
+
+			final double[] lab = new double[3 * n];
+			Conversion.rgbToLab(rgb, lab, n);
+			final double[] l = new double[n];
+			final double[] a = new double[n];
+			final double[] b = new double[n];
+			int m = 0;
+			for (int i = 0; i < n; i++) {
+				if (constraint == null || constraint.test(lab[3 * i], lab[3 * i + 1], lab[3 * i + 2])) {
+					l[m] = lab[3 * i];
+					a[m] = lab[3 * i + 1];
+					b[m] = lab[3 * i + 2];
+					weights[m++] = weights[i];
+				}
+			}
+			return SampleSpace.of(filter, constraint, l, a, b, Arrays.copyOf(weights, m), m);
+		}
+
+	}
+
+	/**
+	 * Picks initial centroids by weighted k-means++: each next centroid is a
+	 * sample drawn with probability proportional to its weight times its squared
+	 * distance to the closest centroid so far.
+	 */
+	private static List<double[]> seeds(SampleSpace samples, int k, DistanceType distanceType, SplittableRandom random) {
+		final PreparedColors prepared = samples.prepared(PreparedColors.simulates(distanceType));
+		final double[] minDistance = new double[samples.size];
+		Arrays.fill(minDistance, Double.POSITIVE_INFINITY);
+		final List<double[]> seeds = new ArrayList<>(k);
+		int next = draw(samples.weights, null, samples.size, random);
+		while (true) {
+			seeds.add(samples.get(next));
+			if (seeds.size() >= k) {
+				return seeds;
+			}
+			for (int i = 0; i < samples.size; i++) {
+				final double d = ColorDistance.getColorDistance(prepared, i, prepared, next, distanceType);
+				// samples with NaN distances (unsimulable colors) are never drawn
+				if (d < minDistance[i]) {
+					minDistance[i] = d;
+				}
+			}
+			next = draw(samples.weights, minDistance, samples.size, random);
+		}
+	}
+
+	/**
+	 * @return a sample index drawn with probability proportional to its weight
+	 *         times its squared distance (if any)
+	 */
+	private static int draw(double[] weights, double[] distances, int size, SplittableRandom random) {
+		double total = 0;
+		for (int i = 0; i < size; i++) {
+			total += score(weights, distances, i);
+		}
+		double target = random.nextDouble() * total;
+		int last = 0;
+		for (int i = 0; i < size; i++) {
+			final double score = score(weights, distances, i);
+			if (score > 0) {
+				last = i;
+				target -= score;
+				if (target < 0) {
+					return i;
+				}
+			}
+		}
+		return last; // rounding
+	}
+
+	private static double score(double[] weights, double[] distances, int i) {
+		if (distances == null) {
+			return weights[i];
+		}
+		final double d = distances[i];
+		return d > 0 && d < Double.POSITIVE_INFINITY ? weights[i] * d * d : 0;
+	}
+
+	private static List<double[]> allOf(SampleSpace samples) {
+		final List<double[]> colors = new ArrayList<>(samples.size);
+		for (int i = 0; i < samples.size; i++) {
+			colors.add(samples.get(i));
+		}
+		return colors;
+	}
+
+	/**
+	 * @return the colors with a positive weight, by decreasing weight
+	 */
+	private static List<double[]> byWeight(double[] weights, List<double[]> colors) {
+		final Integer[] order = new Integer[colors.size()];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, (i, j) -> Double.compare(weights[j], weights[i]));
+		final List<double[]> sorted = new ArrayList<>(colors.size());
+		for (int i : order) {
+			if (weights[i] > 0) {
+				sorted.add(colors.get(i));
+			}
+		}
+		return sorted;
+	}
+
+}
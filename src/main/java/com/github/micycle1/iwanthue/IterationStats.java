@@ -0,0 +1,27 @@
+package com.github.micycle1.iwanthue;
+
+import java.util.List;
+
+/**
+ * Statistics of a single k-means iteration or force-vector step, as reported to
+ * a {@link GenerationListener}.
+ *
+ * @param attempt             index of the attempt (restart), from 0
+ * @param iteration           number of the iteration within the attempt, from 1
+ * @param centroidShift       total displacement of the palette colors (in Lab
+ *                            units); generation stops once this is at most the
+ *                            {@link Settings#tolerance(double) tolerance}
+ * @param reassigned          for k-means, the number of samples assigned to a
+ *                            different centroid than in the previous iteration;
+ *                            for force-vector, the number of colors that moved
+ * @param distanceEvaluations number of color distances evaluated
+ * @param minDistance         minimum distance between any two palette colors
+ *                            after the iteration (other than two locked colors,
+ *                            when {@link iWantHue#extend extending} a palette)
+ * @param elapsedNanos        time elapsed since the attempt started
+ * @param palette             the palette after the iteration, as [L, a, b]
+ *                            arrays (locked colors first)
+ */
+public record IterationStats(int attempt, int iteration, double centroidShift, int reassigned, long distanceEvaluations, double minDistance,
+		long elapsedNanos, List<double[]> palette) {
+}
@@ -0,0 +1,486 @@
+package com.github.micycle1.iwanthue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import com.github.micycle1.iwanthue.ColorDistance.DistanceType;
+
+/**
+ * K-means clustering of a {@link SampleSpace}.
+ * <p>
+ * Centroids, assignments and accumulators are held in flat primitive buffers
+ * that are allocated once, so iterating allocates nothing beyond colorblind
+ * simulation of the centroids. Samples are
+ * {@link PreparedColors prepared} once per sample space and centroids whenever
+ * they move, so colorblind simulation never runs twice for the same color. Each iteration
+ * assigns every sample to its closest centroid, then accumulates all centroids
+ * in a single pass over the samples. The output is identical to the original
+ * list-based implementation.
+ * <p>
+ * Samples are processed in fixed-size blocks that may run in parallel: each
+ * block assigns its samples and accumulates per-block centroid sums, which are
+ * then reduced in block order. Blocks do not depend on the number of threads,
+ * so neither does the output.
+ * <p>
+ * With Euclidean distance, samples are assigned using a k-d tree over the
+ * centroids, and out-of-gamut centroids find their closest free sample using the
+ * sample space's k-d tree. With fewer centroids, and with CMC distance, each
+ * block is scanned one centroid at a time with the bulk
+ * {@link DistanceKernels distance kernels}.
+ * <p>
+ * An iteration is a function of the centroids alone, so once an iteration
+ * leaves them unchanged, further iterations would too.
+ * <p>
+ * The first centroids may be fixed: samples are assigned to them as to any
+ * other, but they never move.
+ * <p>
+ * Samples may be weighted, in which case centroids move to the weighted mean
+ * of their samples.
+ */
+final class KMeans implements Optimizer {
+
+	/** Number of samples per block of work. */
+	static final int BLOCK_SIZE = 2048;
+	/** Minimum number of centroids for which to index them. */
+	static final int CENTROID_INDEX_THRESHOLD = 8;
+
+	private final SampleSpace samples;
+	private final PreparedColors preparedSamples;
+	private final DistanceType distanceType;
+	private final Executor executor;
+	private final int k;
+	/** Number of leading centroids that do not move. */
+	private final int fixed;
+	private final int blocks;
+	private final boolean euclidean;
+	/** Index over the centroids, or null to scan them. */
+	private final LabIndex centroidIndex;
+	/** Bulk kernels for scanning the centroids, or null if the distance has none. */
+	private final DistanceKernels kernels;
+
+	/** Centroid coordinates. */
+	private final double[] cl;
+	private final double[] ca;
+	private final double[] cb;
+	private final PreparedColors preparedCentroids;
+	/** Whether each centroid has moved since it was last prepared. */
+	private final boolean[] dirty;
+
+	/** Index of the closest centroid of each sample, or -1 if unassigned. */
+	private final int[] closest;
+
+	private final double[] sumL;
+	private final double[] sumA;
+	private final double[] sumB;
+	/** Total sample weight of each centroid (its sample count, if unweighted). */
+	private final double[] counts;
+	/** Per-block accumulators, indexed by block * k + centroid. */
+	private final double[] blockSumL;
+	private final double[] blockSumA;
+	private final double[] blockSumB;
+	private final double[] blockCounts;
+	/** Per-block reassigned samples and distance evaluations of the last step. */
+	private final int[] blockReassigned;
+	private final long[] blockEvaluations;
+
+	/** Statistics of the last step. */
+	private double shift;
+	private int reassigned;
+	private long evaluations;
+
+	/** Samples already taken by a centroid during the current update. */
+	private final boolean[] used;
+	private final int[] usedSamples;
+	private int usedCount;
+
+	// scratch
+	private final LabIndex.Search[] blockSearch;
+	/**
+	 * Per-block distances to a centroid, and the closest centroid so far (and its
+	 * distance), when scanning with kernels.
+	 */
+	private final double[][] blockDistances;
+	private final double[][] blockMinDistances;
+	private final int[][] blockNearest;
+	private final LabIndex.Search search = new LabIndex.Search();
+	private final PreparedColors preparedCandidate;
+	private final double[] candidate = new double[3];
+	private final double[] rgb = new double[3];
+
+	/**
+	 * @param samples      sample space to cluster
+	 * @param initial      initial centroids, as [L, a, b] arrays
+	 * @param distanceType distance function to use
+	 */
+	KMeans(SampleSpace samples, List<double[]> initial, DistanceType distanceType) {
+		this(samples, initial, distanceType, null);
+	}
+
+	/**
+	 * @param samples      sample space to cluster
+	 * @param initial      initial centroids, as [L, a, b] arrays
+	 * @param distanceType distance function to use
+	 * @param executor     executor to split blocks across, or null to run on the
+	 *                     calling thread
+	 */
+	KMeans(SampleSpace samples, List<double[]> initial, DistanceType distanceType, Executor executor) {
+		this(samples, initial, 0, distanceType, executor);
+	}
+
+	/**
+	 * @param samples      sample space to cluster
+	 * @param initial      initial centroids, as [L, a, b] arrays
+	 * @param fixed        number of leading centroids that do not move
+	 * @param distanceType distance function to use
+	 * @param executor     executor to split blocks across, or null to run on the
+	 *                     calling thread
+	 */
+	KMeans(SampleSpace samples, List<double[]> initial, int fixed, DistanceType distanceType, Executor executor) {
+		this.samples = samples;
+		this.fixed = fixed;
+		this.distanceType = distanceType == null ? DistanceType.DEFAULT : distanceType;
+		this.executor = executor;
+		k = initial.size();
+		blocks = (samples.size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		cl = new double[k];
+		ca = new double[k];
+		cb = new double[k];
+		for (int j = 0; j < k; j++) {
+			double[] lab = initial.get(j);
+			cl[j] = lab[0];
+			ca[j] = lab[1];
+			cb[j] = lab[2];
+		}
+
+		final boolean simulate = PreparedColors.simulates(this.distanceType);
+		preparedSamples = samples.prepared(simulate);
+		preparedCentroids = new PreparedColors(k, simulate);
+		dirty = new boolean[k];
+		Arrays.fill(dirty, true);
+		preparedCandidate = new PreparedColors(1, simulate);
+
+		closest = new int[samples.size];
+		Arrays.fill(closest, -1);
+		sumL = new double[k];
+		sumA = new double[k];
+		sumB = new double[k];
+		counts = new double[k];
+		blockSumL = new double[blocks * k];
+		blockSumA = new double[blocks * k];
+		blockSumB = new double[blocks * k];
+		blockCounts = new double[blocks * k];
+		blockReassigned = new int[blocks];
+		blockEvaluations = new long[blocks];
+		blockSearch = new LabIndex.Search[blocks];
+		for (int block = 0; block < blocks; block++) {
+			blockSearch[block] = new LabIndex.Search();
+		}
+		euclidean = this.distanceType == DistanceType.DEFAULT || this.distanceType == DistanceType.EUCLIDEAN;
+		centroidIndex = euclidean && k >= CENTROID_INDEX_THRESHOLD ? new LabIndex(cl, ca, cb, k) : null;
+		kernels = centroidIndex == null && (euclidean || this.distanceType == DistanceType.CMC) ? DistanceKernels.get() : null;
+		blockDistances = new double[kernels == null ? 0 : blocks][];
+		blockMinDistances = new double[kernels == null ? 0 : blocks][];
+		blockNearest = new int[kernels == null ? 0 : blocks][];
+		for (int block = 0; block < blockDistances.length; block++) {
+			final int length = Math.min(samples.size, (block + 1) * BLOCK_SIZE) - block * BLOCK_SIZE;
+			blockDistances[block] = new double[length];
+			blockMinDistances[block] = new double[length];
+			blockNearest[block] = new int[length];
+		}
+		used = new boolean[samples.size];
+		usedSamples = new int[k];
+	}
+
+	/**
+	 * Runs the given number of iterations.
+	 */
+	void run(int steps) {
+		while (steps-- > 0) {
+			step();
+		}
+	}
+
+	/**
+	 * Runs a single iteration: samples -> closest centroid, then samples ->
+	 * centroids.
+	 */
+	@Override
+	public double step() {
+		if (centroidIndex != null) {
+			centroidIndex.rebuild();
+		} else {
+			for (int j = 0; j < k; j++) {
+				if (dirty[j]) {
+					preparedCentroids.set(j, cl[j], ca[j], cb[j]);
+					dirty[j] = false;
+				}
+			}
+		}
+		Parallel.forEach(executor, blocks, this::assign);
+		reassigned = 0;
+		evaluations = 0;
+		for (int block = 0; block < blocks; block++) {
+			reassigned += blockReassigned[block];
+			evaluations += blockEvaluations[block];
+		}
+		search.evaluations = 0;
+		update();
+		evaluations += search.evaluations;
+		return shift;
+	}
+
+	@Override
+	public int reassigned() {
+		return reassigned;
+	}
+
+	@Override
+	public long distanceEvaluations() {
+		return evaluations;
+	}
+
+	/**
+	 * Assigns the samples of a block to their closest centroid, and accumulates
+	 * the block's centroid sums.
+	 */
+	private void assign(int block) {
+		final int offset = block * k;
+		for (int j = 0; j < k; j++) {
+			blockSumL[offset + j] = 0;
+			blockSumA[offset + j] = 0;
+			blockSumB[offset + j] = 0;
+			blockCounts[offset + j] = 0;
+		}
+
+		final LabIndex.Search search = blockSearch[block];
+		search.evaluations = 0;
+		int reassigned = 0;
+		long evaluations = 0;
+		final int from = block * BLOCK_SIZE;
+		final int to = Math.min(samples.size, (block + 1) * BLOCK_SIZE);
+		if (kernels != null) {
+			scan(block, from, to);
+			evaluations = (long) k * (to - from);
+		}
+		final int[] nearest = kernels != null ? blockNearest[block] : null;
+		for (int i = from; i < to; i++) {
+			final int previous = closest[i];
+			if (centroidIndex != null) {
+				closest[i] = centroidIndex.nearest(search, samples.l[i], samples.a[i], samples.b[i], null);
+			} else if (nearest != null) {
+				closest[i] = nearest[i - from];
+			} else {
+				double minDistance = Double.POSITIVE_INFINITY;
+				for (int j = 0; j < k; j++) {
+					double distance = ColorDistance.getColorDistance(preparedSamples, i, preparedCentroids, j, distanceType);
+					if (distance < minDistance) {
+						minDistance = distance;
+						closest[i] = j;
+					}
+				}
+				evaluations += k;
+			}
+			if (closest[i] != previous) {
+				reassigned++;
+			}
+
+			final int j = closest[i];
+			if (j >= 0) {
+				// a unit weight leaves the sums exactly as unweighted
+				final double w = samples.weight(i);
+				blockCounts[offset + j] += w;
+				blockSumL[offset + j] += w * samples.l[i];
+				blockSumA[offset + j] += w * samples.a[i];
+				blockSumB[offset + j] += w * samples.b[i];
+			}
+		}
+		blockReassigned[block] = reassigned;
+		blockEvaluations[block] = evaluations + search.evaluations;
+	}
+
+	/**
+	 * Finds the closest centroid of the samples of a block with the bulk
+	 * kernels, one centroid at a time. Ties and NaN distances resolve as in the
+	 * per-sample scan: the lowest centroid wins, and a sample with no finite
+	 * distance keeps its previous centroid.
+	 */
+	private void scan(int block, int from, int to) {
+		final double[] distances = blockDistances[block];
+		final double[] minDistances = blockMinDistances[block];
+		final int[] nearest = blockNearest[block];
+		final int length = to - from;
+		for (int n = 0; n < length; n++) {
+			minDistances[n] = Double.POSITIVE_INFINITY;
+			nearest[n] = closest[from + n];
+		}
+		for (int j = 0; j < k; j++) {
+			if (euclidean) {
+				kernels.euclidean(preparedSamples, from, to, cl[j], ca[j], cb[j], distances);
+			} else {
+				kernels.cmc(preparedSamples, from, to, preparedCentroids, j, distances);
+			}
+			for (int n = 0; n < length; n++) {
+				if (distances[n] < minDistances[n]) {
+					minDistances[n] = distances[n];
+					nearest[n] = j;
+				}
+			}
+		}
+	}
+
+	private void update() {
+		for (int j = 0; j < k; j++) {
+			double l = 0, a = 0, b = 0, count = 0;
+			for (int block = 0; block < blocks; block++) {
+				final int o = block * k + j;
+				l += blockSumL[o];
+				a += blockSumA[o];
+				b += blockSumB[o];
+				count += blockCounts[o];
+			}
+			sumL[j] = l;
+			sumA[j] = a;
+			sumB[j] = b;
+			counts[j] = count;
+		}
+
+		shift = 0;
+
+		// all samples are free again
+		for (int u = 0; u < usedCount; u++) {
+			used[usedSamples[u]] = false;
+		}
+		usedCount = 0;
+
+		for (int j = 0; j < k; j++) {
+			// fixed centroids stay put, but still take their sample
+			if (j >= fixed) {
+				move(j);
+			}
+
+			final int s = samples.indexOf(cl[j], ca[j], cb[j]);
+			if (s >= 0 && !used[s]) {
+				used[s] = true;
+				usedSamples[usedCount++] = s;
+			}
+		}
+	}
+
+	/**
+	 * Moves a centroid to the mean of its samples, or to the closest sample if
+	 * that is invalid.
+	 */
+	private void move(int j) {
+		final double count = counts[j];
+		candidate[0] = sumL[j];
+		candidate[1] = sumA[j];
+		candidate[2] = sumB[j];
+		if (count != 0) {
+			candidate[0] /= count;
+			candidate[1] /= count;
+			candidate[2] /= count;
+		}
+
+		if (count != 0 && samples.accepts(candidate, rgb)) {
+			setCentroid(j, candidate[0], candidate[1], candidate[2]);
+		} else {
+			// The candidate centroid is out of the boundaries of the color space, or
+			// unfound.
+			if (usedCount < samples.size) {
+				// We search for the closest FREE sample of the candidate centroid. Like
+				// upstream iWantHue, on its sample grid the sample taken is the one at
+				// that position in the full sample list, rather than in the free list.
+				final int c = closestSample(candidate, true);
+				if (c >= 0) {
+					final int s = samples.grid() ? c - usedBefore(c) : c;
+					setCentroid(j, samples.l[s], samples.a[s], samples.b[s]);
+				}
+			} else {
+				// Then we just search for the closest sample of the candidate centroid
+				final int c = closestSample(candidate, false);
+				if (c >= 0) {
+					setCentroid(j, samples.l[c], samples.a[c], samples.b[c]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param lab      query color
+	 * @param freeOnly whether to skip samples already taken by a centroid
+	 * @return the index of the sample closest to the query, or -1
+	 */
+	private int closestSample(double[] lab, boolean freeOnly) {
+		if (euclidean) {
+			return samples.index().nearest(search, lab[0], lab[1], lab[2], freeOnly ? used : null);
+		}
+		preparedCandidate.set(0, lab[0], lab[1], lab[2]);
+		double minDistance = Double.POSITIVE_INFINITY;
+		int c = -1;
+		for (int i = 0; i < samples.size; i++) {
+			if (freeOnly && used[i]) {
+				continue;
+			}
+			double distance = ColorDistance.getColorDistance(preparedSamples, i, preparedCandidate, 0, distanceType);
+			search.evaluations++;
+			if (distance < minDistance) {
+				minDistance = distance;
+				c = i;
+			}
+		}
+		return c;
+	}
+
+	/**
+	 * @return number of used samples with an index lower than the given one
+	 */
+	private int usedBefore(int i) {
+		int count = 0;
+		for (int u = 0; u < usedCount; u++) {
+			if (usedSamples[u] < i) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private void setCentroid(int j, double l, double a, double b) {
+		final double dl = l - cl[j];
+		final double da = a - ca[j];
+		final double db = b - cb[j];
+		shift += Math.sqrt(dl * dl + da * da + db * db);
+		if (l != cl[j] || a != ca[j] || b != cb[j]) {
+			cl[j] = l;
+			ca[j] = a;
+			cb[j] = b;
+			dirty[j] = true;
+		}
+	}
+
+	/**
+	 * @return the total weight of the samples assigned to each centroid in the
+	 *         last step
+	 */
+	double[] weights() {
+		return counts.clone();
+	}
+
+	@Override
+	public List<double[]> palette() {
+		return centroids();
+	}
+
+	/**
+	 * @return the current centroids, as new [L, a, b] arrays
+	 */
+	List<double[]> centroids() {
+		List<double[]> centroids = new ArrayList<>(k);
+		for (int j = 0; j < k; j++) {
+			centroids.add(new double[] { cl[j], ca[j], cb[j] });
+		}
+		return centroids;
+	}
+
+}
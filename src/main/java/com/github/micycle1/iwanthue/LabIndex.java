@@ -0,0 +1,188 @@
+package com.github.micycle1.iwanthue;
+
+/**
+ * A k-d tree over a set of Lab points, answering Euclidean nearest-neighbour
+ * queries.
+ * <p>
+ * The tree is implicit: points are stored as a permutation of their indices,
+ * where the median of each range is the splitting node. Point coordinates are
+ * read from the arrays given at construction, so the tree can be
+ * {@link #rebuild() rebuilt} in place after they change. Distances are computed
+ * exactly as {@link ColorDistance} computes Euclidean distance, and ties are
+ * broken by lowest point index, so queries agree exactly with a linear scan.
+ * Queries do not modify the tree, so may run concurrently.
+ */
+final class LabIndex {
+
+	private static final int LEAF_SIZE = 8;
+
+	private final double[][] coords;
+	private final int size;
+	private final int[] order;
+	/** Splitting axis of the node at each position of {@link #order}. */
+	private final byte[] axes;
+
+	/**
+	 * Per-caller query state, so that queries allocate nothing.
+	 */
+	static final class Search {
+		private final double[] query = new double[3];
+		private int best;
+		private double bestDistance;
+		/** Number of distances evaluated by queries so far. */
+		long evaluations;
+	}
+
+	/**
+	 * @param l    L coordinates
+	 * @param a    a coordinates
+	 * @param b    b coordinates
+	 * @param size number of points
+	 */
+	LabIndex(double[] l, double[] a, double[] b, int size) {
+		coords = new double[][] { l, a, b };
+		this.size = size;
+		order = new int[size];
+		axes = new byte[size];
+		rebuild();
+	}
+
+	/**
+	 * Rebuilds the tree from the current point coordinates.
+	 */
+	void rebuild() {
+		for (int i = 0; i < size; i++) {
+			order[i] = i;
+		}
+		build(0, size);
+	}
+
+	private void build(int lo, int hi) {
+		if (hi - lo <= LEAF_SIZE) {
+			return;
+		}
+		// split along the axis of largest spread
+		int axis = 0;
+		double maxSpread = -1;
+		for (int d = 0; d < 3; d++) {
+			final double[] c = coords[d];
+			double min = Double.POSITIVE_INFINITY;
+			double max = Double.NEGATIVE_INFINITY;
+			for (int i = lo; i < hi; i++) {
+				final double v = c[order[i]];
+				min = Math.min(min, v);
+				max = Math.max(max, v);
+			}
+			if (max - min > maxSpread) {
+				maxSpread = max - min;
+				axis = d;
+			}
+		}
+		final int mid = (lo + hi) >>> 1;
+		select(coords[axis], lo, hi - 1, mid);
+		axes[mid] = (byte) axis;
+		build(lo, mid);
+		build(mid + 1, hi);
+	}
+
+	/**
+	 * Partially sorts order[lo..hi] such that the element at position k is in its
+	 * sorted position (by coordinate, then index).
+	 */
+	private void select(double[] c, int lo, int hi, int k) {
+		while (hi > lo) {
+			final int pivot = order[(lo + hi) >>> 1];
+			int i = lo;
+			int j = hi;
+			while (i <= j) {
+				while (compare(c, order[i], pivot) < 0) {
+					i++;
+				}
+				while (compare(c, order[j], pivot) > 0) {
+					j--;
+				}
+				if (i <= j) {
+					final int t = order[i];
+					order[i++] = order[j];
+					order[j--] = t;
+				}
+			}
+			if (k <= j) {
+				hi = j;
+			} else if (k >= i) {
+				lo = i;
+			} else {
+				return;
+			}
+		}
+	}
+
+	private static int compare(double[] c, int p, int q) {
+		final int cmp = Double.compare(c[p], c[q]);
+		return cmp != 0 ? cmp : Integer.compare(p, q);
+	}
+
+	/**
+	 * Finds the point closest to the query color.
+	 *
+	 * @param search   caller's query state
+	 * @param l        query L
+	 * @param a        query a
+	 * @param b        query b
+	 * @param excluded points to skip, or null
+	 * @return the index of the closest point (the lowest index if several are
+	 *         equally close), or -1 if there are no candidate points
+	 */
+	int nearest(Search search, double l, double a, double b, boolean[] excluded) {
+		search.query[0] = l;
+		search.query[1] = a;
+		search.query[2] = b;
+		search.best = -1;
+		search.bestDistance = Double.POSITIVE_INFINITY;
+		nearest(search, 0, size, excluded);
+		return search.best;
+	}
+
+	private void nearest(Search search, int lo, int hi, boolean[] excluded) {
+		if (hi - lo <= LEAF_SIZE) {
+			for (int i = lo; i < hi; i++) {
+				test(search, order[i], excluded);
+			}
+			return;
+		}
+		final int mid = (lo + hi) >>> 1;
+		final int p = order[mid];
+		test(search, p, excluded);
+		final int axis = axes[mid];
+		final double diff = search.query[axis] - coords[axis][p];
+		if (diff < 0) {
+			nearest(search, lo, mid, excluded);
+			// a sqrt-of-squares distance is never less than any single |delta|,
+			// so the far side can only hold closer points (or ties) if this holds
+			if (-diff <= search.bestDistance) {
+				nearest(search, mid + 1, hi, excluded);
+			}
+		} else {
+			nearest(search, mid + 1, hi, excluded);
+			if (diff <= search.bestDistance) {
+				nearest(search, lo, mid, excluded);
+			}
+		}
+	}
+
+	private void test(Search search, int p, boolean[] excluded) {
+		if (excluded != null && excluded[p]) {
+			return;
+		}
+		search.evaluations++;
+		final double delta0 = coords[0][p] - search.query[0];
+		final double delta1 = coords[1][p] - search.query[1];
+		final double delta2 = coords[2][p] - search.query[2];
+		final double distance = Math.sqrt(delta0 * delta0 + delta1 * delta1 + delta2 * delta2);
+		if (distance < search.bestDistance || (distance == search.bestDistance && p < search.best)) {
+			search.bestDistance = distance;
+			search.best = p;
+		}
+	}
+
+}
@@ -0,0 +1,362 @@
+package com.github.micycle1.iwanthue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Executor;
+
+import com.github.micycle1.iwanthue.ColorDistance.DistanceType;
+
+/**
+ * Mini-batch k-means clustering of a {@link SampleSpace} (Sculley, "Web-scale
+ * k-means clustering", 2010).
+ * <p>
+ * Each iteration draws a batch of samples at random (with replacement), assigns
+ * them to their closest centroid, then moves each centroid towards its batch
+ * samples one at a time, with a per-centroid learning rate of 1 / (the total
+ * weight the centroid has been assigned so far). Centroids thus settle as they
+ * accumulate samples, and an iteration costs the batch size rather than the
+ * sample count.
+ * <p>
+ * Batches are assigned in blocks that may run in parallel, as in
+ * {@link KMeans}; batches are drawn and centroids updated on the calling
+ * thread, so the output depends on the random generator alone.
+ * <p>
+ * Centroids that leave the sample space move to their closest free sample. The
+ * first centroids may be fixed: samples are assigned to them as to any other,
+ * but they never move.
+ */
+final class MiniBatchKMeans implements Optimizer {
+
+	private final SampleSpace samples;
+	private final PreparedColors preparedSamples;
+	private final DistanceType distanceType;
+	private final Executor executor;
+	private final SplittableRandom random;
+	private final int k;
+	/** Number of leading centroids that do not move. */
+	private final int fixed;
+	private final int batchSize;
+	private final int blocks;
+	private final boolean euclidean;
+	/** Index over the centroids, or null to scan them. */
+	private final LabIndex centroidIndex;
+	/** Bulk kernels for scanning the centroids, or null if the distance has none. */
+	private final DistanceKernels kernels;
+
+	/** Centroid coordinates, and their coordinates before the current step. */
+	private final double[] cl;
+	private final double[] ca;
+	private final double[] cb;
+	private final double[] previousL;
+	private final double[] previousA;
+	private final double[] previousB;
+	private final PreparedColors preparedCentroids;
+	/** Whether each centroid has moved since it was last prepared. */
+	private final boolean[] dirty;
+	/** Total sample weight assigned to each centroid over all steps. */
+	private final double[] counts;
+
+	/** Sample indices of the current batch, and the batch's prepared samples. */
+	private final int[] batch;
+	private final PreparedColors preparedBatch;
+	/** Closest centroid of each batch sample. */
+	private final int[] batchNearest;
+	/** Index of the closest centroid of each sample when last drawn, or -1. */
+	private final int[] closest;
+
+	/** Statistics of the last step. */
+	private int reassigned;
+	private long evaluations;
+	private final int[] blockReassigned;
+	private final long[] blockEvaluations;
+
+	/** Samples taken by a centroid during the current step. */
+	private final boolean[] used;
+	private final int[] usedSamples;
+	private int usedCount;
+
+	// scratch
+	private final LabIndex.Search[] blockSearch;
+	private final double[][] blockDistances;
+	private final double[][] blockMinDistances;
+	private final LabIndex.Search search = new LabIndex.Search();
+	private final PreparedColors preparedCandidate;
+	private final double[] candidate = new double[3];
+	private final double[] rgb = new double[3];
+
+	/**
+	 * @param samples      sample space to cluster
+	 * @param initial      initial centroids, as [L, a, b] arrays
+	 * @param fixed        number of leading centroids that do not move
+	 * @param batchSize    number of samples drawn per step; capped to the number
+	 *                     of samples
+	 * @param distanceType distance function to use
+	 * @param executor     executor to split blocks across, or null to run on the
+	 *                     calling thread
+	 * @param random       generator to draw batches from
+	 */
+	MiniBatchKMeans(SampleSpace samples, List<double[]> initial, int fixed, int batchSize, DistanceType distanceType, Executor executor,
+			SplittableRandom random) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("batchSize must be at least 1: " + batchSize);
+		}
+		this.samples = samples;
+		this.fixed = fixed;
+		this.distanceType = distanceType == null ? DistanceType.DEFAULT : distanceType;
+		this.executor = executor;
+		this.random = random;
+		this.batchSize = Math.min(batchSize, samples.size);
+		k = initial.size();
+		blocks = (this.batchSize + KMeans.BLOCK_SIZE - 1) / KMeans.BLOCK_SIZE;
+		cl = new double[k];
+		ca = new double[k];
+		cb = new double[k];
+		for (int j = 0; j < k; j++) {
+			double[] lab = initial.get(j);
+			cl[j] = lab[0];
+			ca[j] = lab[1];
+			cb[j] = lab[2];
+		}
+		previousL = new double[k];
+		previousA = new double[k];
+		previousB = new double[k];
+		counts = new double[k];
+
+		final boolean simulate = PreparedColors.simulates(this.distanceType);
+		preparedSamples = samples.prepared(simulate);
+		preparedCentroids = new PreparedColors(k, simulate);
+		dirty = new boolean[k];
+		Arrays.fill(dirty, true);
+		preparedCandidate = new PreparedColors(1, simulate);
+		preparedBatch = new PreparedColors(this.batchSize, simulate);
+		batch = new int[this.batchSize];
+		batchNearest = new int[this.batchSize];
+		closest = new int[samples.size];
+		Arrays.fill(closest, -1);
+
+		blockReassigned = new int[blocks];
+		blockEvaluations = new long[blocks];
+		blockSearch = new LabIndex.Search[blocks];
+		for (int block = 0; block < blocks; block++) {
+			blockSearch[block] = new LabIndex.Search();
+		}
+		euclidean = this.distanceType == DistanceType.DEFAULT || this.distanceType == DistanceType.EUCLIDEAN;
+		centroidIndex = euclidean && k >= KMeans.CENTROID_INDEX_THRESHOLD ? new LabIndex(cl, ca, cb, k) : null;
+		kernels = centroidIndex == null && (euclidean || this.distanceType == DistanceType.CMC) ? DistanceKernels.get() : null;
+		blockDistances = new double[kernels == null ? 0 : blocks][];
+		blockMinDistances = new double[kernels == null ? 0 : blocks][];
+		for (int block = 0; block < blockDistances.length; block++) {
+			final int length = Math.min(this.batchSize, (block + 1) * KMeans.BLOCK_SIZE) - block * KMeans.BLOCK_SIZE;
+			blockDistances[block] = new double[length];
+			blockMinDistances[block] = new double[length];
+		}
+		used = new boolean[samples.size];
+		usedSamples = new int[k];
+	}
+
+	/**
+	 * Runs a single iteration: draws a batch, assigns it to the closest
+	 * centroids, then moves the centroids towards their batch samples.
+	 */
+	@Override
+	public double step() {
+		for (int n = 0; n < batchSize; n++) {
+			final int i = random.nextInt(samples.size);
+			batch[n] = i;
+			preparedBatch.set(n, preparedSamples, i);
+		}
+		if (centroidIndex != null) {
+			centroidIndex.rebuild();
+		} else {
+			for (int j = 0; j < k; j++) {
+				if (dirty[j]) {
+					preparedCentroids.set(j, cl[j], ca[j], cb[j]);
+					dirty[j] = false;
+				}
+			}
+		}
+		Parallel.forEach(executor, blocks, this::assign);
+		reassigned = 0;
+		evaluations = 0;
+		for (int block = 0; block < blocks; block++) {
+			evaluations += blockEvaluations[block];
+		}
+		for (int n = 0; n < batchSize; n++) {
+			final int i = batch[n];
+			if (closest[i] != batchNearest[n]) {
+				closest[i] = batchNearest[n];
+				reassigned++;
+			}
+		}
+		search.evaluations = 0;
+		final double shift = update();
+		evaluations += search.evaluations;
+		return shift;
+	}
+
+	@Override
+	public int reassigned() {
+		return reassigned;
+	}
+
+	@Override
+	public long distanceEvaluations() {
+		return evaluations;
+	}
+
+	/**
+	 * Finds the closest centroid of the batch samples of a block. Ties resolve to
+	 * the lowest centroid; a sample with no finite distance keeps its previous
+	 * centroid.
+	 */
+	private void assign(int block) {
+		final LabIndex.Search search = blockSearch[block];
+		search.evaluations = 0;
+		long evaluations = 0;
+		final int from = block * KMeans.BLOCK_SIZE;
+		final int to = Math.min(batchSize, (block + 1) * KMeans.BLOCK_SIZE);
+		if (centroidIndex != null) {
+			for (int n = from; n < to; n++) {
+				batchNearest[n] = centroidIndex.nearest(search, preparedBatch.l[n], preparedBatch.a[n], preparedBatch.b[n], null);
+			}
+		} else if (kernels != null) {
+			final double[] distances = blockDistances[block];
+			final double[] minDistances = blockMinDistances[block];
+			for (int n = from; n < to; n++) {
+				minDistances[n - from] = Double.POSITIVE_INFINITY;
+				batchNearest[n] = closest[batch[n]];
+			}
+			for (int j = 0; j < k; j++) {
+				if (euclidean) {
+					kernels.euclidean(preparedBatch, from, to, cl[j], ca[j], cb[j], distances);
+				} else {
+					kernels.cmc(preparedBatch, from, to, preparedCentroids, j, distances);
+				}
+				for (int n = from; n < to; n++) {
+					if (distances[n - from] < minDistances[n - from]) {
+						minDistances[n - from] = distances[n - from];
+						batchNearest[n] = j;
+					}
+				}
+			}
+			evaluations = (long) k * (to - from);
+		} else {
+			for (int n = from; n < to; n++) {
+				double minDistance = Double.POSITIVE_INFINITY;
+				int nearest = closest[batch[n]];
+				for (int j = 0; j < k; j++) {
+					double distance = ColorDistance.getColorDistance(preparedBatch, n, preparedCentroids, j, distanceType);
+					if (distance < minDistance) {
+						minDistance = distance;
+						nearest = j;
+					}
+				}
+				batchNearest[n] = nearest;
+			}
+			evaluations = (long) k * (to - from);
+		}
+		blockEvaluations[block] = evaluations + search.evaluations;
+	}
+
+	/**
+	 * Moves the centroids towards their batch samples, in batch order.
+	 *
+	 * @return the total displacement of the centroids
+	 */
+	private double update() {
+		System.arraycopy(cl, 0, previousL, 0, k);
+		System.arraycopy(ca, 0, previousA, 0, k);
+		System.arraycopy(cb, 0, previousB, 0, k);
+
+		for (int n = 0; n < batchSize; n++) {
+			final int j = batchNearest[n];
+			if (j < fixed) {
+				// unassigned, or fixed
+				continue;
+			}
+			final int i = batch[n];
+			final double w = samples.weight(i);
+			counts[j] += w;
+			final double eta = w / counts[j];
+			cl[j] += eta * (samples.l[i] - cl[j]);
+			ca[j] += eta * (samples.a[i] - ca[j]);
+			cb[j] += eta * (samples.b[i] - cb[j]);
+		}
+
+		// all samples are free again
+		for (int u = 0; u < usedCount; u++) {
+			used[usedSamples[u]] = false;
+		}
+		usedCount = 0;
+
+		double shift = 0;
+		for (int j = 0; j < k; j++) {
+			if (j >= fixed) {
+				candidate[0] = cl[j];
+				candidate[1] = ca[j];
+				candidate[2] = cb[j];
+				if (!samples.accepts(candidate, rgb)) {
+					// The centroid left the sample space: take its closest free sample
+					final int s = closestSample(candidate, usedCount < samples.size);
+					if (s >= 0) {
+						cl[j] = samples.l[s];
+						ca[j] = samples.a[s];
+						cb[j] = samples.b[s];
+					}
+				}
+				final double dl = cl[j] - previousL[j];
+				final double da = ca[j] - previousA[j];
+				final double db = cb[j] - previousB[j];
+				shift += Math.sqrt(dl * dl + da * da + db * db);
+				if (cl[j] != previousL[j] || ca[j] != previousA[j] || cb[j] != previousB[j]) {
+					dirty[j] = true;
+				}
+			}
+
+			final int s = samples.indexOf(cl[j], ca[j], cb[j]);
+			if (s >= 0 && !used[s]) {
+				used[s] = true;
+				usedSamples[usedCount++] = s;
+			}
+		}
+		return shift;
+	}
+
+	/**
+	 * @param lab      query color
+	 * @param freeOnly whether to skip samples already taken by a centroid
+	 * @return the index of the sample closest to the query, or -1
+	 */
+	private int closestSample(double[] lab, boolean freeOnly) {
+		if (euclidean) {
+			return samples.index().nearest(search, lab[0], lab[1], lab[2], freeOnly ? used : null);
+		}
+		preparedCandidate.set(0, lab[0], lab[1], lab[2]);
+		double minDistance = Double.POSITIVE_INFINITY;
+		int c = -1;
+		for (int i = 0; i < samples.size; i++) {
+			if (freeOnly && used[i]) {
+				continue;
+			}
+			double distance = ColorDistance.getColorDistance(preparedSamples, i, preparedCandidate, 0, distanceType);
+			search.evaluations++;
+			if (distance < minDistance) {
+				minDistance = distance;
+				c = i;
+			}
+		}
+		return c;
+	}
+
+	@Override
+	public List<double[]> palette() {
+		List<double[]> centroids = new ArrayList<>(k);
+		for (int j = 0; j < k; j++) {
+			centroids.add(new double[] { cl[j], ca[j], cb[j] });
+		}
+		return centroids;
+	}
+
+}
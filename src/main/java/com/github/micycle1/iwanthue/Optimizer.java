@@ -0,0 +1,52 @@
+package com.github.micycle1.iwanthue;
+
+import java.util.List;
+
+/**
+ * An iterative palette optimization (k-means clustering or force-vector
+ * repulsion), run one step at a time.
+ */
+interface Optimizer {
+
+	/**
+	 * Runs a single step.
+	 *
+	 * @return the total displacement of the palette colors (in Lab units)
+	 */
+	double step();
+
+	/**
+	 * @return for k-means, the number of samples assigned to a different centroid
+	 *         by the last step; for force-vector, the number of colors it moved
+	 */
+	int reassigned();
+
+	/**
+	 * @return the number of color distances evaluated by the last step
+	 */
+	long distanceEvaluations();
+
+	/**
+	 * @return the current palette, as new [L, a, b] arrays
+	 */
+	List<double[]> palette();
+
+	/**
+	 * Runs up to the given number of steps.
+	 *
+	 * @param steps     maximum number of steps
+	 * @param tolerance stop once the total displacement of a step is at most this
+	 * @return number of steps run
+	 */
+	default int run(int steps, double tolerance) {
+		int step = 0;
+		while (step < steps) {
+			step++;
+			if (step() <= tolerance) {
+				break;
+			}
+		}
+		return step;
+	}
+
+}
@@ -0,0 +1,272 @@
+package com.github.micycle1.iwanthue;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * A persistent cache of generated palettes, in a memory-mapped file that may be
+ * shared across process restarts and between processes.
+ * <p>
+ * Only reproducible generation is cached: settings must have a
+ * {@link Settings#seed(Long) seed}, and a filter must be identified by a
+ * caller-supplied key (filters themselves cannot be compared across
+ * processes). Other requests are generated without the cache.
+ * {@link ColorConstraint Constraints} are values, so need no key.
+ * <p>
+ * The file holds a fixed number of entries, in buckets of {@value #WAYS} chosen
+ * by a 64-bit hash of the generation parameters; a full bucket evicts its
+ * least recently written entry. Each entry is guarded by a sequence number and
+ * a checksum, so readers never see a partly written palette: concurrent
+ * readers (threads or processes) are safe, and a torn or corrupt entry is
+ * treated as a miss. Writes within a process are serialized; concurrent writer
+ * processes may lose each other's entries, but do not corrupt them.
+ */
+public final class PaletteCache implements AutoCloseable {
+
+	private static final int MAGIC = 0x49574843; // "IWHC"
+	private static final int VERSION = 1;
+	/** Entries per bucket. */
+	static final int WAYS = 4;
+
+	// header: magic, version, buckets, max colors, write stamp
+	private static final int HEADER_SIZE = 64;
+	private static final int HEADER_STAMP = 16;
+
+	// entry: sequence, count, key hash, key check, payload checksum, write stamp,
+	// then max colors [L, a, b] doubles
+	private static final int SEQUENCE = 0;
+	private static final int COUNT = 4;
+	private static final int HASH = 8;
+	private static final int CHECK = 16;
+	private static final int CRC = 20;
+	private static final int STAMP = 24;
+	private static final int COLORS = 32;
+
+	private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+	private final FileChannel channel;
+	private final MappedByteBuffer buffer;
+	private final int buckets;
+	private final int maxColors;
+	private final int entrySize;
+
+	/**
+	 * Opens (or creates) a cache file. An existing file with a different capacity
+	 * or maximum palette size is cleared; its length is kept if it is larger, and
+	 * only the part this cache maps is used.
+	 *
+	 * @param file      cache file
+	 * @param capacity  maximum number of cached palettes (rounded up to a multiple
+	 *                  of {@value #WAYS})
+	 * @param maxColors maximum number of colors of a cached palette; larger
+	 *                  palettes are not cached
+	 */
+	public PaletteCache(Path file, int capacity, int maxColors) throws IOException {
+		if (capacity < 1 || maxColors < 1) {
+			throw new IllegalArgumentException("capacity and maxColors must be at least 1: " + capacity + ", " + maxColors);
+		}
+		this.buckets = (capacity + WAYS - 1) / WAYS;
+		this.maxColors = maxColors;
+		entrySize = COLORS + 24 * maxColors;
+		final long size = HEADER_SIZE + (long) buckets * WAYS * entrySize;
+		if (size > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("cache file would exceed 2 GB: " + size + " bytes");
+		}
+
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			// a larger file is never truncated, since other processes may have mapped it
+			final boolean matches = channel.size() >= size;
+			buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			if (!matches || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getInt(8) != buckets
+					|| buffer.getInt(12) != maxColors) {
+				initialize();
+			}
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	private synchronized void initialize() {
+		for (int i = 0; i < buffer.capacity(); i += 8) {
+			buffer.putLong(i, 0);
+		}
+		buffer.putInt(4, VERSION);
+		buffer.putInt(8, buckets);
+		buffer.putInt(12, maxColors);
+		buffer.putLong(HEADER_STAMP, 0);
+		// written last, so that a partly initialized file is not recognized
+		buffer.putInt(0, MAGIC);
+	}
+
+	/**
+	 * Generates a palette with no filter, or returns it from the cache.
+	 *
+	 * @see iWantHue#generate(int, Settings)
+	 */
+	public List<double[]> generate(int colorsCount, Settings settings) {
+		return generate(colorsCount, settings, null);
+	}
+
+	/**
+	 * Generates a palette, or returns it from the cache.
+	 *
+	 * @param colorsCount number of colors in the generated palette
+	 * @param settings    generation settings
+	 * @param filterKey   key that uniquely identifies the settings' filter (such
+	 *                    as "pastel-v2"), or null if there is no filter. Filtered
+	 *                    settings without a key are not cached.
+	 * @return list of [L,A,B] vectors
+	 * @see iWantHue#generate(int, Settings)
+	 */
+	public List<double[]> generate(int colorsCount, Settings settings, String filterKey) {
+		if (settings.seed() == null || (settings.filter() != null && filterKey == null) || colorsCount > maxColors) {
+			return iWantHue.generate(colorsCount, settings);
+		}
+		final byte[] key = key(colorsCount, settings, filterKey).getBytes(StandardCharsets.UTF_8);
+		final long hash = fnv1a(key);
+		final int check = crc(key);
+		List<double[]> palette = get(hash, check);
+		if (palette == null) {
+			palette = iWantHue.generate(colorsCount, settings);
+			put(hash, check, palette);
+		}
+		return palette;
+	}
+
+	/**
+	 * @return the canonical form of all parameters that the generated palette
+	 *         depends on
+	 */
+	static String key(int colorsCount, Settings settings, String filterKey) {
+		return "v" + VERSION + "|" + colorsCount + "|" + settings.clustering() + "|" + settings.batchSize() + "|" + settings.quality() + "|"
+				+ settings.ultraPrecision() + "|" + settings.adaptivePrecision() + "|" + settings.distanceType() + "|"
+				+ Double.doubleToLongBits(settings.tolerance()) + "|" + settings.seed() + "|" + settings.attempts() + "|" + settings.diffSort()
+				+ "|" + settings.constraint() + "|" + (filterKey == null ? "" : filterKey);
+	}
+
+	/**
+	 * @return the 64-bit FNV-1a hash of the bytes
+	 */
+	static long fnv1a(byte[] bytes) {
+		long hash = 0xcbf29ce484222325L;
+		for (byte b : bytes) {
+			hash ^= b & 0xFF;
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	private static int crc(byte[] bytes) {
+		CRC32 crc = new CRC32();
+		crc.update(bytes);
+		return (int) crc.getValue();
+	}
+
+	private int entry(long hash, int way) {
+		return HEADER_SIZE + (int) (Long.remainderUnsigned(hash, buckets) * WAYS + way) * entrySize;
+	}
+
+	/**
+	 * @return the cached palette, or null if absent (or being written)
+	 */
+	List<double[]> get(long hash, int check) {
+		for (int way = 0; way < WAYS; way++) {
+			final int entry = entry(hash, way);
+			final int sequence = (int) INT.getAcquire(buffer, entry + SEQUENCE);
+			if ((sequence & 1) != 0 || buffer.getLong(entry + HASH) != hash || buffer.getInt(entry + CHECK) != check) {
+				continue;
+			}
+			final int count = buffer.getInt(entry + COUNT);
+			if (count < 0 || count > maxColors) {
+				continue;
+			}
+			final List<double[]> palette = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				final int offset = entry + COLORS + 24 * i;
+				palette.add(new double[] { buffer.getDouble(offset), buffer.getDouble(offset + 8), buffer.getDouble(offset + 16) });
+			}
+			final int crc = buffer.getInt(entry + CRC);
+			VarHandle.acquireFence();
+			if ((int) INT.getVolatile(buffer, entry + SEQUENCE) == sequence && crc == payloadCrc(entry, count)) {
+				return palette;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Caches a palette, replacing an entry with the same key, or else the least
+	 * recently written entry of its bucket.
+	 */
+	synchronized void put(long hash, int check, List<double[]> palette) {
+		int target = -1;
+		long oldest = Long.MAX_VALUE;
+		for (int way = 0; way < WAYS; way++) {
+			final int entry = entry(hash, way);
+			if (buffer.getLong(entry + HASH) == hash && buffer.getInt(entry + CHECK) == check) {
+				target = entry;
+				break;
+			}
+			final long stamp = buffer.getLong(entry + STAMP);
+			if (stamp < oldest) {
+				oldest = stamp;
+				target = entry;
+			}
+		}
+		final long stamp = buffer.getLong(HEADER_STAMP) + 1;
+		buffer.putLong(HEADER_STAMP, stamp);
+
+		final int sequence = (int) INT.getVolatile(buffer, target + SEQUENCE);
+		INT.setVolatile(buffer, target + SEQUENCE, sequence | 1); // odd while writing
+		VarHandle.storeStoreFence();
+		buffer.putInt(target + COUNT, palette.size());
+		buffer.putLong(target + HASH, hash);
+		buffer.putInt(target + CHECK, check);
+		buffer.putLong(target + STAMP, stamp);
+		for (int i = 0; i < palette.size(); i++) {
+			final double[] lab = palette.get(i);
+			final int offset = target + COLORS + 24 * i;
+			buffer.putDouble(offset, lab[0]);
+			buffer.putDouble(offset + 8, lab[1]);
+			buffer.putDouble(offset + 16, lab[2]);
+		}
+		buffer.putInt(target + CRC, payloadCrc(target, palette.size()));
+		INT.setRelease(buffer, target + SEQUENCE, (sequence | 1) + 1);
+	}
+
+	private int payloadCrc(int entry, int count) {
+		CRC32 crc = new CRC32();
+		crc.update(buffer.slice(entry + COUNT, CRC - COUNT));
+		crc.update(buffer.slice(entry + COLORS, 24 * count));
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * Removes all cached palettes.
+	 */
+	public synchronized void clear() {
+		initialize();
+	}
+
+	/**
+	 * Writes cached palettes to the file, and closes it.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		buffer.force();
+		channel.close();
+	}
+
+}
@@ -0,0 +1,10 @@
+package com.github.micycle1.iwanthue;
+
+/**
+ * A request for a palette, for {@link PaletteService#submitAll(java.util.List)}.
+ *
+ * @param colorsCount number of colors in the generated palette
+ * @param settings    generation settings
+ */
+public record PaletteRequest(int colorsCount, Settings settings) {
+}
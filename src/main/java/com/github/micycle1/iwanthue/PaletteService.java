@@ -0,0 +1,130 @@
+package com.github.micycle1.iwanthue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates many palettes concurrently on a bounded pool of threads.
+ * <p>
+ * At most a fixed number of requests may be pending (queued or running) at
+ * once; beyond that, submitting blocks until a request completes, so that a
+ * large batch cannot queue unbounded work. Requests share the k-means sample
+ * space cache (including colorblind simulation of the samples) with each other
+ * and with {@link iWantHue#generate(int, Settings)}: requests with the same
+ * filter instance and precision build it once.
+ * <p>
+ * Close the service to release its threads.
+ */
+public class PaletteService implements AutoCloseable {
+
+	private static final AtomicInteger POOL_COUNT = new AtomicInteger();
+
+	private final ThreadPoolExecutor executor;
+	private final Semaphore permits;
+
+	/**
+	 * Creates a service with a thread per available processor, and up to four
+	 * pending requests per thread.
+	 */
+	public PaletteService() {
+		this(Runtime.getRuntime().availableProcessors(), 4 * Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param threads    number of threads generating palettes
+	 * @param maxPending maximum number of requests queued or running at once
+	 */
+	public PaletteService(int threads, int maxPending) {
+		if (threads < 1 || maxPending < 1) {
+			throw new IllegalArgumentException("threads and maxPending must be at least 1: " + threads + ", " + maxPending);
+		}
+		final int pool = POOL_COUNT.incrementAndGet();
+		final AtomicInteger threadCount = new AtomicInteger();
+		final ThreadFactory factory = r -> {
+			Thread thread = new Thread(r, "iwanthue-" + pool + "-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+		// the semaphore bounds the queue
+		executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), factory);
+		permits = new Semaphore(maxPending);
+	}
+
+	/**
+	 * Submits a palette request, blocking while the maximum number of requests are
+	 * pending. The settings are copied, so may be reused and changed afterwards.
+	 *
+	 * @param colorsCount number of colors in the generated palette
+	 * @param settings    generation settings
+	 * @return the palette, as [L, a, b] arrays, once generated. Cancelling it
+	 *         before generation starts skips the request.
+	 * @throws RejectedExecutionException if the service is closed
+	 */
+	public CompletableFuture<List<double[]>> submit(int colorsCount, Settings settings) {
+		final Settings copy = settings.copy();
+		final CompletableFuture<List<double[]>> future = new CompletableFuture<>();
+		try {
+			permits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		}
+		try {
+			executor.execute(() -> {
+				try {
+					if (!future.isDone()) {
+						future.complete(iWantHue.generate(colorsCount, copy));
+					}
+				} catch (Throwable t) {
+					future.completeExceptionally(t);
+				} finally {
+					permits.release();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			permits.release();
+			throw e;
+		}
+		return future;
+	}
+
+	/**
+	 * Submits palette requests in order, blocking while the maximum number of
+	 * requests are pending.
+	 *
+	 * @return the palettes, in request order
+	 * @see #submit(int, Settings)
+	 */
+	public List<CompletableFuture<List<double[]>>> submitAll(List<PaletteRequest> requests) {
+		List<CompletableFuture<List<double[]>>> futures = new ArrayList<>(requests.size());
+		for (PaletteRequest request : requests) {
+			futures.add(submit(request.colorsCount(), request.settings()));
+		}
+		return futures;
+	}
+
+	/**
+	 * Stops accepting requests, and waits for pending requests to complete.
+	 */
+	@Override
+	public void close() {
+		executor.shutdown();
+		try {
+			while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+				// keep waiting for running requests
+			}
+		} catch (InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
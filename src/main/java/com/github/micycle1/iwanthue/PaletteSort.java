@@ -0,0 +1,96 @@
+package com.github.micycle1.iwanthue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import com.github.micycle1.iwanthue.ColorDistance.DistanceType;
+
+/**
+ * Orders palettes so that neighboring colors are maximally distinct, as
+ * iWantHue's "diff sort": starting from the first color, each next color is the
+ * one farthest (by its minimum distance) from all colors placed so far.
+ * <p>
+ * Distances are computed once, into a matrix of all pairs, and each color's
+ * minimum distance to the placed colors is updated incrementally as colors are
+ * placed, so ordering n colors costs n^2 distance evaluations in all.
+ */
+final class PaletteSort {
+
+	private PaletteSort() {
+	}
+
+	/**
+	 * @param palette  palette to order, as [L, a, b] vectors
+	 * @param fixed    number of leading colors that are already placed (and keep
+	 *                 their positions); if 0, the first color is placed first
+	 * @param type     distance type
+	 * @param executor executor to compute distances on, or null
+	 * @return the ordered palette (sharing the color arrays of the input)
+	 */
+	static List<double[]> diffSort(List<double[]> palette, int fixed, DistanceType type, Executor executor) {
+		final int n = palette.size();
+		if (n - fixed <= 1) {
+			return new ArrayList<>(palette);
+		}
+		final double[] distances = distances(palette, type, executor);
+
+		final boolean[] placed = new boolean[n];
+		final double[] minDistance = new double[n];
+		Arrays.fill(minDistance, Double.POSITIVE_INFINITY);
+		final List<double[]> sorted = new ArrayList<>(n);
+		for (int i = 0; i < Math.max(fixed, 1); i++) {
+			place(i, n, distances, placed, minDistance, palette, sorted);
+		}
+		while (sorted.size() < n) {
+			int next = -1;
+			double max = -1;
+			for (int c = 0; c < n; c++) {
+				if (!placed[c] && minDistance[c] > max) {
+					max = minDistance[c];
+					next = c;
+				}
+			}
+			if (next == -1) {
+				// only colors with NaN distances (such as unsimulable colors) remain
+				next = 0;
+				while (placed[next]) {
+					next++;
+				}
+			}
+			place(next, n, distances, placed, minDistance, palette, sorted);
+		}
+		return sorted;
+	}
+
+	private static void place(int p, int n, double[] distances, boolean[] placed, double[] minDistance, List<double[]> palette,
+			List<double[]> sorted) {
+		placed[p] = true;
+		sorted.add(palette.get(p));
+		for (int c = 0; c < n; c++) {
+			minDistance[c] = Math.min(minDistance[c], distances[c * n + p]);
+		}
+	}
+
+	/**
+	 * @return the matrix of distances from every color (row) to every other color
+	 *         (column), which need not be symmetric
+	 */
+	private static double[] distances(List<double[]> palette, DistanceType type, Executor executor) {
+		final int n = palette.size();
+		final PreparedColors colors = new PreparedColors(n, PreparedColors.simulates(type));
+		for (int i = 0; i < n; i++) {
+			final double[] lab = palette.get(i);
+			colors.set(i, lab[0], lab[1], lab[2]);
+		}
+		final double[] distances = new double[n * n];
+		Parallel.forEach(executor, n, i -> {
+			for (int j = 0; j < n; j++) {
+				distances[i * n + j] = i == j ? 0 : ColorDistance.getColorDistance(colors, i, colors, j, type);
+			}
+		});
+		return distances;
+	}
+
+}
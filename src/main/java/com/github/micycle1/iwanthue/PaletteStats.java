@@ -0,0 +1,64 @@
+package com.github.micycle1.iwanthue;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import com.github.micycle1.iwanthue.ColorBlindSimulator.ConfusionType;
+import com.github.micycle1.iwanthue.ColorDistance.DistanceType;
+
+/**
+ * Quality statistics of a palette, from its {@link DistanceMatrix distance
+ * matrices}: the closest (worst) pair of colors and the mean pairwise
+ * distance, under a distance type and as seen with each color vision
+ * deficiency.
+ *
+ * @param distanceType       distance type of the closest pair and mean
+ * @param closestPair        closest pair of colors, or null if there are fewer
+ *                           than two colors
+ * @param meanDistance       mean pairwise distance
+ * @param closestByConfusion closest pair of simulated colors (by CMC distance),
+ *                           for each confusion type with any simulable pair
+ */
+public record PaletteStats(DistanceType distanceType, Pair closestPair, double meanDistance, Map<ConfusionType, Pair> closestByConfusion) {
+
+	/**
+	 * A pair of palette colors, by index (i &lt; j), and their distance.
+	 */
+	public record Pair(int i, int j, double distance) {
+	}
+
+	/**
+	 * Evaluates a palette. Colors are prepared (and simulated) once for all
+	 * distance matrices.
+	 *
+	 * @param palette  colors, as [L, a, b] vectors
+	 * @param type     distance type
+	 * @param executor executor to compute distances on, or null
+	 */
+	public static PaletteStats of(List<double[]> palette, DistanceType type, Executor executor) {
+		final DistanceType t = type == null ? DistanceType.DEFAULT : type;
+		final PreparedColors colors = PreparedColors.of(palette, true);
+		final DistanceMatrix matrix = DistanceMatrix.compute(colors, t, executor);
+
+		final Map<ConfusionType, Pair> closestByConfusion = new EnumMap<>(ConfusionType.class);
+		for (ConfusionType confusion : ConfusionType.values()) {
+			final Pair pair = DistanceMatrix.compute(colors.simulated[confusion.ordinal()], DistanceType.CMC, executor).closestPair();
+			if (pair != null) {
+				closestByConfusion.put(confusion, pair);
+			}
+		}
+		return new PaletteStats(t, matrix.closestPair(), matrix.mean(), Collections.unmodifiableMap(closestByConfusion));
+	}
+
+	/**
+	 * @return the minimum pairwise distance, or infinity if there are fewer than
+	 *         two colors
+	 */
+	public double minDistance() {
+		return closestPair == null ? Double.POSITIVE_INFINITY : closestPair.distance();
+	}
+
+}
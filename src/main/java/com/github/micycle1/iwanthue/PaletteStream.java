@@ -0,0 +1,82 @@
+package com.github.micycle1.iwanthue;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Publishes the palettes of a generation as it progresses. Each subscription
+ * runs its own generation: intermediate palettes are published as they
+ * improve, then the final palette, then completion.
+ * <p>
+ * Generation runs on a thread of its own (splitting its work across the
+ * settings' executor as usual). At most one palette is buffered beyond what
+ * the subscriber has requested: once the buffer is full, generation waits for
+ * the subscriber to request more. It stops (within an iteration) once its
+ * subscriber cancels.
+ */
+final class PaletteStream implements Flow.Publisher<List<double[]>> {
+
+	private static final AtomicInteger THREADS = new AtomicInteger();
+
+	private final int colorsCount;
+	private final Settings settings;
+	private final int interval;
+
+	/**
+	 * @param interval number of iterations between intermediate palettes
+	 */
+	PaletteStream(int colorsCount, Settings settings, int interval) {
+		if (interval < 1) {
+			throw new IllegalArgumentException("interval must be at least 1: " + interval);
+		}
+		this.colorsCount = colorsCount;
+		this.settings = settings.copy();
+		this.interval = interval;
+	}
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super List<double[]>> subscriber) {
+		// palettes are delivered on the common pool; a full buffer blocks submission
+		final SubmissionPublisher<List<double[]>> publisher = new SubmissionPublisher<>(ForkJoinPool.commonPool(), 1);
+		publisher.subscribe(subscriber);
+		// generation runs on its own thread, so that it cannot hold up delivery
+		final Thread thread = new Thread(() -> run(publisher), "iwanthue-stream-" + THREADS.incrementAndGet());
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void run(SubmissionPublisher<List<double[]>> publisher) {
+		final GenerationListener listener = settings.listener();
+		final Object lock = new Object();
+		final double[] best = { Double.NEGATIVE_INFINITY };
+		final Settings publishing = settings.copy().listener(stats -> {
+			if (listener != null) {
+				listener.iteration(stats);
+			}
+			if (publisher.getNumberOfSubscribers() == 0) {
+				throw new CancellationException();
+			}
+			// attempts may run concurrently
+			synchronized (lock) {
+				if (stats.iteration() % interval == 0 && stats.minDistance() > best[0]) {
+					best[0] = stats.minDistance();
+					publisher.submit(stats.palette());
+				}
+			}
+		});
+		try {
+			final List<double[]> palette = iWantHue.generate(colorsCount, publishing);
+			publisher.submit(palette);
+			publisher.close();
+		} catch (CancellationException e) {
+			publisher.close();
+		} catch (RuntimeException | Error e) {
+			publisher.closeExceptionally(e);
+		}
+	}
+
+}
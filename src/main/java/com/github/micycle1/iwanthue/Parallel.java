@@ -0,0 +1,103 @@
+package com.github.micycle1.iwanthue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntConsumer;
+
+/**
+ * Runs loops over independent work items, optionally across an executor.
+ * <p>
+ * Work items are always the same regardless of the executor (callers split work
+ * into fixed-size blocks), so results that are combined in item order do not
+ * depend on the number of threads.
+ */
+final class Parallel {
+
+	private Parallel() {
+	}
+
+	/**
+	 * Runs {@code body} for every index in [0, count), returning once all have
+	 * completed.
+	 *
+	 * @param executor executor to run items on, or null to run them on the calling
+	 *                 thread. A {@link ForkJoinPool} is used with work-stealing, so
+	 *                 it may be the pool the caller itself runs on; other executors
+	 *                 are waited on, so should not be the caller's own bounded pool.
+	 * @param count    number of items
+	 * @param body     item body
+	 */
+	static void forEach(Executor executor, int count, IntConsumer body) {
+		if (executor == null || count <= 1) {
+			for (int i = 0; i < count; i++) {
+				body.accept(i);
+			}
+		} else if (executor instanceof ForkJoinPool pool) {
+			ForEachAction action = new ForEachAction(body, 0, count);
+			if (ForkJoinTask.getPool() == pool) {
+				action.invoke();
+			} else {
+				pool.invoke(action);
+			}
+		} else {
+			final CountDownLatch latch = new CountDownLatch(count);
+			final AtomicReference<Throwable> failure = new AtomicReference<>();
+			for (int i = 0; i < count; i++) {
+				final int item = i;
+				executor.execute(() -> {
+					try {
+						body.accept(item);
+					} catch (Throwable t) {
+						failure.compareAndSet(null, t);
+					} finally {
+						latch.countDown();
+					}
+				});
+			}
+			try {
+				latch.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(e);
+			}
+			final Throwable t = failure.get();
+			if (t instanceof RuntimeException r) {
+				throw r;
+			} else if (t instanceof Error e) {
+				throw e;
+			} else if (t != null) {
+				throw new IllegalStateException(t);
+			}
+		}
+	}
+
+	private static final class ForEachAction extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final IntConsumer body;
+		private final int from;
+		private final int to;
+
+		ForEachAction(IntConsumer body, int from, int to) {
+			this.body = body;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from == 1) {
+				body.accept(from);
+			} else {
+				final int mid = (from + to) >>> 1;
+				invokeAll(new ForEachAction(body, from, mid), new ForEachAction(body, mid, to));
+			}
+		}
+	}
+
+}
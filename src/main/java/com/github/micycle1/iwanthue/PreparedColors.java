@@ -0,0 +1,146 @@
+package com.github.micycle1.iwanthue;
+
+import java.util.List;
+
+import com.github.micycle1.iwanthue.ColorBlindSimulator.ConfusionType;
+
+/**
+ * A set of Lab colors stored as a struct of arrays, together with the terms
+ * that distance functions would otherwise recompute on every call. Colors that
+ * are compared many times (samples, centroids) are prepared once, so that
+ * distance evaluation never repeats per-color work.
+ * <p>
+ * The per-color CMC terms (chroma, and the S_L, S_C and S_H weights, which
+ * involve atan2, cos and fourth powers) are precomputed, leaving only the
+ * pairwise deltas for distance evaluation.
+ * <p>
+ * When prepared for colorblind simulation, each color also holds its simulated
+ * variant for every {@link ConfusionType}, in declaration order.
+ */
+final class PreparedColors {
+
+	private static final ConfusionType[] CONFUSION_TYPES = ConfusionType.values();
+
+	final int size;
+	final double[] l;
+	final double[] a;
+	final double[] b;
+
+	/** Chroma. */
+	final double[] c;
+	/** CMC lightness, chroma and hue weights. */
+	final double[] sl;
+	final double[] sc;
+	final double[] sh;
+
+	/**
+	 * Simulated variants of the colors, indexed by confusion type ordinal, or null
+	 * if not simulated.
+	 */
+	final PreparedColors[] simulated;
+
+	/**
+	 * Creates an empty (all zero) set of colors.
+	 *
+	 * @param size     number of colors
+	 * @param simulate whether to prepare simulated variants of the colors
+	 */
+	PreparedColors(int size, boolean simulate) {
+		this.size = size;
+		l = new double[size];
+		a = new double[size];
+		b = new double[size];
+		c = new double[size];
+		sl = new double[size];
+		sc = new double[size];
+		sh = new double[size];
+		if (simulate) {
+			simulated = new PreparedColors[CONFUSION_TYPES.length];
+			for (int t = 0; t < simulated.length; t++) {
+				simulated[t] = new PreparedColors(size, false);
+			}
+		} else {
+			simulated = null;
+		}
+	}
+
+	/**
+	 * Prepares the colors of a sample space.
+	 */
+	static PreparedColors of(SampleSpace samples, boolean simulate) {
+		PreparedColors colors = new PreparedColors(samples.size, simulate);
+		for (int i = 0; i < samples.size; i++) {
+			colors.set(i, samples.l[i], samples.a[i], samples.b[i]);
+		}
+		return colors;
+	}
+
+	/**
+	 * Prepares the colors of a palette.
+	 *
+	 * @param palette colors, as [L, a, b] vectors
+	 */
+	static PreparedColors of(List<double[]> palette, boolean simulate) {
+		PreparedColors colors = new PreparedColors(palette.size(), simulate);
+		for (int i = 0; i < palette.size(); i++) {
+			final double[] lab = palette.get(i);
+			colors.set(i, lab[0], lab[1], lab[2]);
+		}
+		return colors;
+	}
+
+	/**
+	 * @return whether the distance type needs simulated variants of colors
+	 */
+	static boolean simulates(ColorDistance.DistanceType distanceType) {
+		return distanceType == ColorDistance.DistanceType.COMPROMISE || distanceType == ColorDistance.DistanceType.COMPROMISE_CIEDE2000;
+	}
+
+	/**
+	 * Sets (and prepares) the color at the given index.
+	 */
+	void set(int i, double l, double a, double b) {
+		this.l[i] = l;
+		this.a[i] = a;
+		this.b[i] = b;
+		final double C = ColorDistance.chroma(a, b);
+		c[i] = C;
+		sl[i] = ColorDistance.cmcSL(l);
+		sc[i] = ColorDistance.cmcSC(C);
+		sh[i] = ColorDistance.cmcSH(a, b, C, sc[i]);
+		if (simulated != null) {
+			final double[] lab = { l, a, b };
+			for (int t = 0; t < simulated.length; t++) {
+				final double[] labCb = ColorBlindSimulator.simulate(lab, CONFUSION_TYPES[t]);
+				simulated[t].set(i, labCb[0], labCb[1], labCb[2]);
+			}
+		}
+	}
+
+	/**
+	 * Sets the color at the given index to a color of another set, copying rather
+	 * than recomputing its prepared terms.
+	 */
+	void set(int i, PreparedColors colors, int j) {
+		l[i] = colors.l[j];
+		a[i] = colors.a[j];
+		b[i] = colors.b[j];
+		c[i] = colors.c[j];
+		sl[i] = colors.sl[j];
+		sc[i] = colors.sc[j];
+		sh[i] = colors.sh[j];
+		if (simulated != null) {
+			for (int t = 0; t < simulated.length; t++) {
+				simulated[t].set(i, colors.simulated[t], j);
+			}
+		}
+	}
+
+	/**
+	 * @return whether any coordinate of the color at the given index is NaN
+	 */
+	boolean isNaN(int i) {
+		return Double.isNaN(l[i]) || Double.isNaN(a[i]) || Double.isNaN(b[i]);
+	}
+
+}
@@ -0,0 +1,579 @@
+package com.github.micycle1.iwanthue;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.Predicate;
+
+/**
+ * The set of valid Lab colors sampled from a regular L/a/b grid that k-means
+ * clusters over. Building a sample space means converting (and filtering) every
+ * grid point, so instances are immutable and cached by filter identity and grid
+ * resolution; concurrent callers share the same instance.
+ * <p>
+ * Samples are stored as a struct of arrays in grid order (L outermost, b
+ * innermost), which is the order the original implementation visited them in.
+ * <p>
+ * A {@link ColorConstraint constraint} is compiled into a bitmask over the
+ * samples of the unconstrained space (with the same filter and resolution),
+ * by combining the masks of its parts; the constrained space holds the masked
+ * samples. As constraints are values, equal constraints share sample spaces.
+ * <p>
+ * A sample space may instead hold arbitrary weighted colors (such as the bins
+ * of an image's color histogram), which are not cached.
+ */
+final class SampleSpace {
+
+	/**
+	 * Maximum number of sample spaces kept in the cache. The least recently used
+	 * entry is evicted beyond this.
+	 */
+	static final int CACHE_CAPACITY = 16;
+
+	private static final Predicate<double[]> ACCEPT_ALL = rgb -> true;
+
+	private static final Map<Key, FutureTask<SampleSpace>> CACHE = new LinkedHashMap<>(CACHE_CAPACITY, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, FutureTask<SampleSpace>> eldest) {
+			return size() > CACHE_CAPACITY;
+		}
+	};
+
+	enum Resolution {
+		/** 5 steps in L, 10 in a and b. */
+		NORMAL(5, 10),
+		/** 1 step in L, 5 in a and b. */
+		ULTRA(1, 5);
+
+		final int lStep;
+		final int abStep;
+
+		Resolution(int lStep, int abStep) {
+			this.lStep = lStep;
+			this.abStep = abStep;
+		}
+	}
+
+	private record Key(Predicate<double[]> filter, ColorConstraint constraint, Resolution resolution) {
+	}
+
+	final Resolution resolution;
+	final Predicate<double[]> filter;
+	/** Constraint on samples, or null. */
+	final ColorConstraint constraint;
+	final double[] l;
+	final double[] a;
+	final double[] b;
+	/** Sample weights, or null if all samples weigh 1. */
+	final double[] weights;
+	final int size;
+
+	private final int lCount;
+	private final int abCount;
+	/**
+	 * Maps a grid point (in visiting order) to its sample index, or -1; null if
+	 * the samples are not a grid.
+	 */
+	private final int[] gridToSample;
+	/**
+	 * Spaces a refined space was refined from, whose prepared samples it copies;
+	 * null otherwise.
+	 */
+	private final SampleSpace coarse, fine;
+	/**
+	 * Sample of the fine space that each sample is, or (-1 - its index) of the
+	 * coarse space; null if not refined.
+	 */
+	private final int[] origins;
+
+	private volatile LabIndex index;
+	private volatile PreparedColors prepared;
+	private volatile PreparedColors preparedSimulated;
+
+	private SampleSpace(Predicate<double[]> filter, Resolution resolution) {
+		this.filter = filter;
+		this.constraint = null;
+		this.resolution = resolution;
+		lCount = 100 / resolution.lStep + 1;
+		abCount = 200 / resolution.abStep + 1;
+		gridToSample = new int[lCount * abCount * abCount];
+
+		final double[] ls = new double[gridToSample.length];
+		final double[] as = new double[gridToSample.length];
+		final double[] bs = new double[gridToSample.length];
+		final double[] lab = new double[3];
+		final double[] rgb = new double[3];
+		int n = 0;
+		int cell = 0;
+		for (int li = 0; li < lCount; li++) {
+			for (int ai = 0; ai < abCount; ai++) {
+				for (int bi = 0; bi < abCount; bi++) {
+					lab[0] = li * resolution.lStep;
+					lab[1] = -100 + ai * resolution.abStep;
+					lab[2] = -100 + bi * resolution.abStep;
+					if (accepts(lab, rgb)) {
+						ls[n] = lab[0];
+						as[n] = lab[1];
+						bs[n] = lab[2];
+						gridToSample[cell++] = n++;
+					} else {
+						gridToSample[cell++] = -1;
+					}
+				}
+			}
+		}
+		l = Arrays.copyOf(ls, n);
+		a = Arrays.copyOf(as, n);
+		b = Arrays.copyOf(bs, n);
+		weights = null;
+		size = n;
+		coarse = null;
+		fine = null;
+		origins = null;
+	}
+
+	/**
+	 * Creates the samples of a space that are set in a mask.
+	 */
+	private SampleSpace(SampleSpace base, long[] mask, ColorConstraint constraint) {
+		this.filter = base.filter;
+		this.constraint = constraint;
+		this.resolution = base.resolution;
+		lCount = base.lCount;
+		abCount = base.abCount;
+		final int[] remap = new int[base.size];
+		int n = 0;
+		for (int i = 0; i < base.size; i++) {
+			remap[i] = (mask[i >>> 6] & (1L << i)) != 0 ? n++ : -1;
+		}
+		l = new double[n];
+		a = new double[n];
+		b = new double[n];
+		for (int i = 0; i < base.size; i++) {
+			final int j = remap[i];
+			if (j >= 0) {
+				l[j] = base.l[i];
+				a[j] = base.a[i];
+				b[j] = base.b[i];
+			}
+		}
+		gridToSample = new int[base.gridToSample.length];
+		for (int cell = 0; cell < gridToSample.length; cell++) {
+			final int i = base.gridToSample[cell];
+			gridToSample[cell] = i < 0 ? -1 : remap[i];
+		}
+		weights = null;
+		size = n;
+		coarse = null;
+		fine = null;
+		origins = null;
+	}
+
+	private SampleSpace(Predicate<double[]> filter, ColorConstraint constraint, double[] l, double[] a, double[] b, double[] weights,
+			int size, SampleSpace coarse, SampleSpace fine, int[] origins) {
+		this.filter = filter;
+		this.constraint = constraint;
+		this.l = l;
+		this.a = a;
+		this.b = b;
+		this.weights = weights;
+		this.size = size;
+		resolution = null;
+		lCount = 0;
+		abCount = 0;
+		gridToSample = null;
+		this.coarse = coarse;
+		this.fine = fine;
+		this.origins = origins;
+	}
+
+	/**
+	 * Creates an (uncached) sample space of weighted colors. Colors are not
+	 * checked against the gamut, filter or constraint, which only apply to moved
+	 * centroids.
+	 *
+	 * @param filter     filter on [r, g, b] colors; may be null
+	 * @param constraint constraint on colors; may be null
+	 * @param l          sample L coordinates
+	 * @param a          sample a coordinates
+	 * @param b          sample b coordinates
+	 * @param weights    sample weights
+	 * @param size       number of samples
+	 */
+	static SampleSpace of(Predicate<double[]> filter, ColorConstraint constraint, double[] l, double[] a, double[] b, double[] weights,
+			int size) {
+		return new SampleSpace(filter == null ? ACCEPT_ALL : filter, constraint, l, a, b, weights, size, null, null, null);
+	}
+
+	/**
+	 * @return whether the samples are the valid points of a grid, rather than
+	 *         arbitrary colors
+	 */
+	boolean grid() {
+		return gridToSample != null;
+	}
+
+	/**
+	 * @return the weight of the sample at the given index
+	 */
+	double weight(int i) {
+		return weights == null ? 1 : weights[i];
+	}
+
+	/**
+	 * Returns the (possibly cached) sample space for the given filter.
+	 *
+	 * @param filter         filter on [r, g, b] colors; may be null
+	 * @param ultraPrecision whether to use the {@link Resolution#ULTRA ultra} grid
+	 */
+	static SampleSpace get(Predicate<double[]> filter, boolean ultraPrecision) {
+		return get(filter, null, ultraPrecision ? Resolution.ULTRA : Resolution.NORMAL);
+	}
+
+	/**
+	 * Returns the (possibly cached) sample space for the given filter and
+	 * constraint.
+	 *
+	 * @param filter         filter on [r, g, b] colors; may be null
+	 * @param constraint     constraint on colors; may be null
+	 * @param ultraPrecision whether to use the {@link Resolution#ULTRA ultra} grid
+	 */
+	static SampleSpace get(Predicate<double[]> filter, ColorConstraint constraint, boolean ultraPrecision) {
+		return get(filter, constraint, ultraPrecision ? Resolution.ULTRA : Resolution.NORMAL);
+	}
+
+	/**
+	 * Returns the (possibly cached) sample space for the given filter and grid
+	 * resolution. Filters are compared by identity, so callers should reuse the
+	 * same filter instance to benefit from caching.
+	 *
+	 * @param filter     filter on [r, g, b] colors; may be null
+	 * @param resolution grid resolution
+	 */
+	static SampleSpace get(Predicate<double[]> filter, Resolution resolution) {
+		return get(filter, null, resolution);
+	}
+
+	/**
+	 * Returns the (possibly cached) sample space for the given filter, constraint
+	 * and grid resolution. Filters are compared by identity, constraints by value.
+	 *
+	 * @param filter     filter on [r, g, b] colors; may be null
+	 * @param constraint constraint on colors; may be null
+	 * @param resolution grid resolution
+	 */
+	static SampleSpace get(Predicate<double[]> filter, ColorConstraint constraint, Resolution resolution) {
+		final Predicate<double[]> f = filter == null ? ACCEPT_ALL : filter;
+		final Key key = new Key(f, constraint, resolution);
+		FutureTask<SampleSpace> task;
+		boolean owner = false;
+		synchronized (CACHE) {
+			task = CACHE.get(key);
+			if (task == null) {
+				task = new FutureTask<>(() -> {
+					if (constraint == null) {
+						return new SampleSpace(f, resolution);
+					}
+					final SampleSpace base = get(f, null, resolution);
+					return new SampleSpace(base, base.mask(constraint), constraint);
+				});
+				CACHE.put(key, task);
+				owner = true;
+			}
+		}
+		if (owner) {
+			task.run(); // build outside the lock; other callers wait on the task
+		}
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (ExecutionException e) {
+			synchronized (CACHE) {
+				CACHE.remove(key, task);
+			}
+			if (e.getCause() instanceof RuntimeException r) {
+				throw r;
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	/**
+	 * Clears the sample space cache.
+	 */
+	static void clearCache() {
+		synchronized (CACHE) {
+			CACHE.clear();
+		}
+	}
+
+	/**
+	 * Checks that a color is valid: it must be within the RGB color space and
+	 * satisfy this sample space's filter.
+	 *
+	 * @param lab [L, a, b] color
+	 * @param rgb scratch array for the [r, g, b] color
+	 */
+	boolean accepts(double[] lab, double[] rgb) {
+		if (constraint != null && !constraint.test(lab[0], lab[1], lab[2])) {
+			return false;
+		}
+		if (filter == ACCEPT_ALL) {
+			return Gamut.contains(lab[0], lab[1], lab[2]);
+		}
+		return Gamut.toRgb(lab, rgb) != null && filter.test(rgb);
+	}
+
+	/**
+	 * Compiles a constraint into a bitmask over the samples: range constraints
+	 * are tested on every sample, and combinations combine their parts' masks.
+	 */
+	long[] mask(ColorConstraint constraint) {
+		final int words = (size + 63) >>> 6;
+		final long[] mask = new long[words];
+		if (constraint instanceof ColorConstraint.Range range) {
+			for (int i = 0; i < size; i++) {
+				if (range.test(l[i], a[i], b[i])) {
+					mask[i >>> 6] |= 1L << i;
+				}
+			}
+		} else if (constraint instanceof ColorConstraint.And and) {
+			Arrays.fill(mask, -1L);
+			for (ColorConstraint part : and.constraints()) {
+				final long[] partMask = mask(part);
+				for (int w = 0; w < words; w++) {
+					mask[w] &= partMask[w];
+				}
+			}
+		} else if (constraint instanceof ColorConstraint.Or or) {
+			for (ColorConstraint part : or.constraints()) {
+				final long[] partMask = mask(part);
+				for (int w = 0; w < words; w++) {
+					mask[w] |= partMask[w];
+				}
+			}
+		} else if (constraint instanceof ColorConstraint.Not not) {
+			final long[] partMask = mask(not.constraint());
+			for (int w = 0; w < words; w++) {
+				mask[w] = ~partMask[w];
+			}
+		}
+		// clear the bits past the last sample
+		if ((size & 63) != 0) {
+			mask[words - 1] &= (1L << size) - 1;
+		}
+		return mask;
+	}
+
+	/**
+	 * @return a spatial index over the samples, built on first use
+	 */
+	LabIndex index() {
+		LabIndex i = index;
+		if (i == null) {
+			synchronized (this) {
+				i = index;
+				if (i == null) {
+					index = i = new LabIndex(l, a, b, size);
+				}
+			}
+		}
+		return i;
+	}
+
+	/**
+	 * Returns the samples prepared for distance evaluation, prepared on first use.
+	 * Simulated variants are cached too, so colorblind simulation runs once per
+	 * sample. A refined space copies the prepared samples of the spaces it was
+	 * refined from.
+	 *
+	 * @param simulate whether the samples need simulated variants
+	 */
+	PreparedColors prepared(boolean simulate) {
+		PreparedColors p = simulate ? preparedSimulated : prepared;
+		if (p == null) {
+			synchronized (this) {
+				p = simulate ? preparedSimulated : prepared;
+				if (p == null) {
+					p = origins == null ? PreparedColors.of(this, simulate) : copyPrepared(simulate);
+					if (simulate) {
+						preparedSimulated = p;
+					} else {
+						prepared = p;
+					}
+				}
+			}
+		}
+		return p;
+	}
+
+	private PreparedColors copyPrepared(boolean simulate) {
+		final PreparedColors fineColors = fine.prepared(simulate);
+		final PreparedColors coarseColors = coarse.prepared(simulate);
+		final PreparedColors colors = new PreparedColors(size, simulate);
+		for (int i = 0; i < size; i++) {
+			final int j = origins[i];
+			if (j >= 0) {
+				colors.set(i, fineColors, j);
+			} else {
+				colors.set(i, coarseColors, -1 - j);
+			}
+		}
+		return colors;
+	}
+
+	/**
+	 * @return the index of the sample with exactly the given coordinates, or -1
+	 */
+	int indexOf(double l, double a, double b) {
+		if (gridToSample == null) {
+			final int i = index().nearest(new LabIndex.Search(), l, a, b, null);
+			if (i < 0 || Double.compare(this.l[i], l) != 0 || Double.compare(this.a[i], a) != 0 || Double.compare(this.b[i], b) != 0) {
+				return -1;
+			}
+			return i;
+		}
+		final double li = l / resolution.lStep;
+		final double ai = (a + 100) / resolution.abStep;
+		final double bi = (b + 100) / resolution.abStep;
+		if (li != (int) li || ai != (int) ai || bi != (int) bi || li < 0 || ai < 0 || bi < 0 || li >= lCount || ai >= abCount
+				|| bi >= abCount) {
+			return -1;
+		}
+		final int i = gridToSample[((int) li * abCount + (int) ai) * abCount + (int) bi];
+		// compare bitwise, as Arrays.equals() would (e.g. -0.0 != 0.0)
+		if (i < 0 || Double.compare(this.l[i], l) != 0 || Double.compare(this.a[i], a) != 0 || Double.compare(this.b[i], b) != 0) {
+			return -1;
+		}
+		return i;
+	}
+
+	/**
+	 * @return the grid cell (in visiting order) of the grid point closest to a
+	 *         color, clamped to the grid
+	 */
+	int cellOf(double l, double a, double b) {
+		final int li = clamp((int) Math.floor(l / resolution.lStep + 0.5), lCount);
+		final int ai = clamp((int) Math.floor((a + 100) / resolution.abStep + 0.5), abCount);
+		final int bi = clamp((int) Math.floor((b + 100) / resolution.abStep + 0.5), abCount);
+		return (li * abCount + ai) * abCount + bi;
+	}
+
+	private static int clamp(int i, int count) {
+		return i < 0 ? 0 : i >= count ? count - 1 : i;
+	}
+
+	/**
+	 * Creates an (uncached) space sampled at two resolutions: the samples of a
+	 * finer space within the cells of this space's grid near some colors, and
+	 * this space's samples elsewhere. A cell holds the finer grid points closest
+	 * to its grid point, so the two parts do not overlap; each coarse sample
+	 * weighs the number of finer grid points in its cell, so the space
+	 * approximates the finer one. The result is not a {@link #grid() grid}, so
+	 * rejected k-means centroids take their closest free sample.
+	 *
+	 * @param fine   finer space, with the same filter and constraint, whose grid
+	 *               steps divide this space's
+	 * @param cells  cells (as from {@link #cellOf(double, double, double)}) to
+	 *               refine around
+	 * @param count  number of cells
+	 * @param radius number of neighbouring cells to refine around each cell, in
+	 *               each direction
+	 */
+	SampleSpace refine(SampleSpace fine, int[] cells, int count, int radius) {
+		if (gridToSample == null || fine.gridToSample == null || resolution.lStep % fine.resolution.lStep != 0
+				|| resolution.abStep % fine.resolution.abStep != 0) {
+			throw new IllegalArgumentException("cannot refine " + resolution + " with " + fine.resolution);
+		}
+		final boolean[] refined = new boolean[gridToSample.length];
+		for (int c = 0; c < count; c++) {
+			final int li = cells[c] / (abCount * abCount);
+			final int ai = cells[c] / abCount % abCount;
+			final int bi = cells[c] % abCount;
+			for (int l = Math.max(0, li - radius); l <= Math.min(lCount - 1, li + radius); l++) {
+				for (int a = Math.max(0, ai - radius); a <= Math.min(abCount - 1, ai + radius); a++) {
+					for (int b = Math.max(0, bi - radius); b <= Math.min(abCount - 1, bi + radius); b++) {
+						refined[(l * abCount + a) * abCount + b] = true;
+					}
+				}
+			}
+		}
+
+		// the cell of each finer grid coordinate, rounding halves up, and the number
+		// of finer grid coordinates in each cell
+		final int[] lCell = cellsOf(fine.lCount, fine.resolution.lStep, resolution.lStep);
+		final int[] abCell = cellsOf(fine.abCount, fine.resolution.abStep, resolution.abStep);
+		final int[] lCounts = new int[lCount];
+		final int[] abCounts = new int[abCount];
+		for (int c : lCell) {
+			lCounts[c]++;
+		}
+		for (int c : abCell) {
+			abCounts[c]++;
+		}
+
+		final int capacity = size + fine.size;
+		final double[] ls = new double[capacity];
+		final double[] as = new double[capacity];
+		final double[] bs = new double[capacity];
+		final double[] ws = new double[capacity];
+		final int[] os = new int[capacity];
+		int n = 0;
+		int point = 0;
+		for (int li = 0; li < fine.lCount; li++) {
+			for (int ai = 0; ai < fine.abCount; ai++) {
+				for (int bi = 0; bi < fine.abCount; bi++, point++) {
+					final int i = fine.gridToSample[point];
+					if (i >= 0 && refined[(lCell[li] * abCount + abCell[ai]) * abCount + abCell[bi]]) {
+						ls[n] = fine.l[i];
+						as[n] = fine.a[i];
+						bs[n] = fine.b[i];
+						os[n] = i;
+						ws[n++] = 1;
+					}
+				}
+			}
+		}
+		int cell = 0;
+		for (int li = 0; li < lCount; li++) {
+			for (int ai = 0; ai < abCount; ai++) {
+				for (int bi = 0; bi < abCount; bi++, cell++) {
+					final int i = gridToSample[cell];
+					if (i >= 0 && !refined[cell]) {
+						ls[n] = l[i];
+						as[n] = a[i];
+						bs[n] = b[i];
+						os[n] = -1 - i;
+						ws[n++] = lCounts[li] * abCounts[ai] * abCounts[bi];
+					}
+				}
+			}
+		}
+		return new SampleSpace(filter, constraint, ls, as, bs, ws, n, this, fine, os);
+	}
+
+	/**
+	 * @return the coarse grid coordinate closest to each fine grid coordinate
+	 */
+	private static int[] cellsOf(int fineCount, int fineStep, int coarseStep) {
+		final int[] cells = new int[fineCount];
+		for (int u = 0; u < fineCount; u++) {
+			cells[u] = (2 * u * fineStep + coarseStep) / (2 * coarseStep);
+		}
+		return cells;
+	}
+
+	/**
+	 * @return a new [L, a, b] array for the sample at the given index
+	 */
+	double[] get(int i) {
+		return new double[] { l[i], a[i], b[i] };
+	}
+
+}
@@ -0,0 +1,292 @@
+package com.github.micycle1.iwanthue;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
+
+import com.github.micycle1.iwanthue.ColorDistance.DistanceType;
+
+/**
+ * Palette generation settings for {@link iWantHue#generate(int, Settings)}.
+ * Setters return this settings object so calls can be chained.
+ */
+public class Settings {
+
+	private Predicate<double[]> filter;
+	private ColorConstraint constraint;
+	private Clustering clustering = Clustering.K_MEANS;
+	private int batchSize;
+	private int quality = 50;
+	private boolean ultraPrecision;
+	private boolean adaptivePrecision;
+	private DistanceType distanceType = DistanceType.DEFAULT;
+	private Executor executor;
+	private double tolerance;
+	private Long seed;
+	private int attempts = 1;
+	private GenerationListener listener;
+	private boolean diffSort;
+
+	/**
+	 * Creates settings with the defaults: k-means clustering, quality 50, normal
+	 * precision, default distance, no filter or constraint, no seed, a single attempt, no
+	 * parallelism and no ordering.
+	 */
+	public Settings() {
+	}
+
+	/**
+	 * @return a copy of these settings
+	 */
+	public Settings copy() {
+		Settings copy = new Settings();
+		copy.filter = filter;
+		copy.constraint = constraint;
+		copy.clustering = clustering;
+		copy.batchSize = batchSize;
+		copy.quality = quality;
+		copy.ultraPrecision = ultraPrecision;
+		copy.adaptivePrecision = adaptivePrecision;
+		copy.distanceType = distanceType;
+		copy.executor = executor;
+		copy.tolerance = tolerance;
+		copy.seed = seed;
+		copy.attempts = attempts;
+		copy.listener = listener;
+		copy.diffSort = diffSort;
+		return copy;
+	}
+
+	/**
+	 * @param filter Function used to filter suitable colors. Takes a [r, g, b]
+	 *               color; null accepts all colors. K-means sample spaces are
+	 *               cached by filter identity, so reuse the same instance.
+	 */
+	public Settings filter(Predicate<double[]> filter) {
+		this.filter = filter;
+		return this;
+	}
+
+	public Predicate<double[]> filter() {
+		return filter;
+	}
+
+	/**
+	 * @param constraint declarative constraint on colors (such as a preset like
+	 *                   {@link ColorConstraint#PASTEL}), or null for none. Unlike
+	 *                   a filter, it is tested without RGB conversion, and
+	 *                   k-means sample spaces are cached by its value. Colors
+	 *                   must satisfy both the constraint and the filter.
+	 */
+	public Settings constraint(ColorConstraint constraint) {
+		this.constraint = constraint;
+		return this;
+	}
+
+	public ColorConstraint constraint() {
+		return constraint;
+	}
+
+	/**
+	 * @param forceMode Clustering method to use: force-vector if true, k-means
+	 *                  otherwise.
+	 */
+	public Settings forceMode(boolean forceMode) {
+		return clustering(forceMode ? Clustering.FORCE_VECTOR : Clustering.K_MEANS);
+	}
+
+	/**
+	 * @return whether the clustering method is force-vector
+	 */
+	public boolean forceMode() {
+		return clustering == Clustering.FORCE_VECTOR;
+	}
+
+	/**
+	 * @param clustering Clustering method to use; null for k-means.
+	 */
+	public Settings clustering(Clustering clustering) {
+		this.clustering = clustering == null ? Clustering.K_MEANS : clustering;
+		return this;
+	}
+
+	public Clustering clustering() {
+		return clustering;
+	}
+
+	/**
+	 * @param batchSize number of samples per mini-batch k-means iteration, or 0
+	 *                  (the default) for max(1024, 4 * colors), capped to the
+	 *                  number of samples
+	 */
+	public Settings batchSize(int batchSize) {
+		if (batchSize < 0) {
+			throw new IllegalArgumentException("batchSize must not be negative: " + batchSize);
+		}
+		this.batchSize = batchSize;
+		return this;
+	}
+
+	public int batchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * @param quality Quality of the clustering: iterations factor for
+	 *                force-vector, number of iterations for (mini-batch) k-means.
+	 */
+	public Settings quality(int quality) {
+		this.quality = quality;
+		return this;
+	}
+
+	public int quality() {
+		return quality;
+	}
+
+	/**
+	 * @param ultraPrecision Ultra precision for k-means colorspace sampling?
+	 */
+	public Settings ultraPrecision(boolean ultraPrecision) {
+		this.ultraPrecision = ultraPrecision;
+		return this;
+	}
+
+	public boolean ultraPrecision() {
+		return ultraPrecision;
+	}
+
+	/**
+	 * @param adaptivePrecision Coarse-to-fine k-means sampling: converge on the
+	 *                          normal grid, then refine the neighbourhoods of the
+	 *                          colors on the ultra grid. Close to ultra precision
+	 *                          at a fraction of its cost; takes precedence over
+	 *                          ultra precision. Mini-batch k-means, whose
+	 *                          iterations do not depend on the grid size, samples
+	 *                          the ultra grid instead.
+	 */
+	public Settings adaptivePrecision(boolean adaptivePrecision) {
+		this.adaptivePrecision = adaptivePrecision;
+		return this;
+	}
+
+	public boolean adaptivePrecision() {
+		return adaptivePrecision;
+	}
+
+	/**
+	 * @param distanceType Distance function to use; null for the default.
+	 */
+	public Settings distanceType(DistanceType distanceType) {
+		this.distanceType = distanceType == null ? DistanceType.DEFAULT : distanceType;
+		return this;
+	}
+
+	public DistanceType distanceType() {
+		return distanceType;
+	}
+
+	/**
+	 * @param tolerance generation stops early once the total displacement of the
+	 *                  palette colors in an iteration is at most this (in Lab
+	 *                  units). The default of 0 stops only once no color moves:
+	 *                  k-means has then converged, so its result is unaffected.
+	 */
+	public Settings tolerance(double tolerance) {
+		this.tolerance = tolerance;
+		return this;
+	}
+
+	public double tolerance() {
+		return tolerance;
+	}
+
+	/**
+	 * Sets the executor that the k-means assignment and accumulation phases, and
+	 * force-vector force computations, are split across. Results do not depend on
+	 * its number of threads.
+	 *
+	 * @param executor executor to run on, or null to run on the calling thread. A
+	 *                 {@link ForkJoinPool} is preferred.
+	 */
+	public Settings executor(Executor executor) {
+		this.executor = executor;
+		return this;
+	}
+
+	public Executor executor() {
+		return executor;
+	}
+
+	/**
+	 * Runs on the {@link ForkJoinPool#commonPool() common pool}.
+	 */
+	public Settings parallel() {
+		return executor(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param seed seed of the random initialization, so that generation is
+	 *             reproducible; null (the default) for a random seed. Results do
+	 *             not depend on the executor.
+	 */
+	public Settings seed(Long seed) {
+		this.seed = seed;
+		return this;
+	}
+
+	public Long seed() {
+		return seed;
+	}
+
+	/**
+	 * Sets the number of independent attempts (restarts from different random
+	 * initializations) to make, keeping the palette with the highest minimum
+	 * pairwise distance. Attempts run concurrently on the {@link #executor(Executor)
+	 * executor}, if any.
+	 *
+	 * @param attempts number of attempts, at least 1
+	 */
+	public Settings attempts(int attempts) {
+		if (attempts < 1) {
+			throw new IllegalArgumentException("attempts must be at least 1: " + attempts);
+		}
+		this.attempts = attempts;
+		return this;
+	}
+
+	public int attempts() {
+		return attempts;
+	}
+
+	/**
+	 * @param listener listener to report iteration statistics to, or null
+	 */
+	public Settings listener(GenerationListener listener) {
+		this.listener = listener;
+		return this;
+	}
+
+	public GenerationListener listener() {
+		return listener;
+	}
+
+	/**
+	 * @param diffSort whether to order the generated colors so that neighboring
+	 *                 colors are maximally distinct, by the settings' distance
+	 *                 type (see {@link iWantHue#diffSort(List, DistanceType)}).
+	 *                 Colors generated by
+	 *                 {@link iWantHue#extend(List, int, Settings) extend} are
+	 *                 ordered to continue the existing palette.
+	 */
+	public Settings diffSort(boolean diffSort) {
+		this.diffSort = diffSort;
+		return this;
+	}
+
+	public boolean diffSort() {
+		return diffSort;
+	}
+
+}
@@ -3,9 +3,13 @@ package com.github.micycle1.iwanthue;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.io.File;
-import java.util.Arrays;
 import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Predicate;
 
 import javax.imageio.ImageIO;
@@ -58,213 +62,233 @@ public class iWantHue {
 	 */
 	public static List<double[]> generate(int colorsCount, Predicate<double[]> checkColorIn, boolean forceMode, int quality,
 			boolean ultraPrecision, DistanceType distanceType) {
-		// Default values
-		Predicate<double[]> checkColor = checkColorIn == null ? rgb -> true : checkColorIn;
+		return generate(colorsCount, new Settings().filter(checkColorIn).forceMode(forceMode).quality(quality).ultraPrecision(ultraPrecision)
+				.distanceType(distanceType));
+	}
+
+	/**
+	 * 
+	 * @param colorsCount number of colors in the generated palette.
+	 * @param settings    generation settings
+	 * @return list of [L,A,B] vectors
+	 */
+	public static List<double[]> generate(int colorsCount, Settings settings) {
+		return generate(List.of(), colorsCount, settings);
+	}
+
+	/**
+	 * Generates colors that are distinct from an existing palette, which is left
+	 * unchanged. The existing colors act as immovable centroids in k-means, or as
+	 * immovable repellers in force-vector mode.
+	 *
+	 * @param locked      existing palette, as [L, a, b] vectors
+	 * @param colorsCount number of colors to generate
+	 * @param settings    generation settings
+	 * @return list of [L,A,B] vectors for the new colors only
+	 */
+	public static List<double[]> extend(List<double[]> locked, int colorsCount, Settings settings) {
+		final List<double[]> copy = new ArrayList<>(locked.size());
+		for (double[] lab : locked) {
+			copy.add(lab.clone());
+		}
+		return generate(copy, colorsCount, settings);
+	}
 
-		if (distanceType == null) {
-			distanceType = DistanceType.DEFAULT;
+	/**
+	 * Generates a palette progressively, for display while it is refined. Each
+	 * subscriber starts its own generation, which publishes intermediate palettes
+	 * as they improve, then the final palette (the result of
+	 * {@link #generate(int, Settings) generate}), then completes. Generation
+	 * runs on a thread of its own, and palettes are delivered on the
+	 * {@link ForkJoinPool#commonPool() common pool}. At most one palette is
+	 * buffered beyond the subscriber's demand; generation then waits for it to
+	 * request more, and stops once it cancels, so that cancelling saves the
+	 * remaining work.
+	 *
+	 * @param colorsCount number of colors in the generated palette
+	 * @param settings    generation settings (copied)
+	 * @param interval    intermediate palettes are checked every this many
+	 *                    iterations (of each attempt), and published if their
+	 *                    minimum pairwise distance exceeds that of every palette
+	 *                    published before
+	 * @return a publisher of [L,A,B] vector lists
+	 */
+	public static Flow.Publisher<List<double[]>> stream(int colorsCount, Settings settings, int interval) {
+		return new PaletteStream(colorsCount, settings, interval);
+	}
+
+	/**
+	 * Orders colors so that neighboring colors are maximally distinct (iWantHue's
+	 * "diff sort"): after the first color, each next color is the one whose
+	 * minimum distance to all colors before it is greatest.
+	 *
+	 * @param colors       colors to order, as [L, a, b] vectors
+	 * @param distanceType distance function to use
+	 * @return a new list of the colors, ordered
+	 * @see Settings#diffSort(boolean)
+	 */
+	public static List<double[]> diffSort(List<double[]> colors, DistanceType distanceType) {
+		return PaletteSort.diffSort(colors, 0, distanceType == null ? DistanceType.DEFAULT : distanceType, null);
+	}
+
+	private static List<double[]> generate(List<double[]> locked, int colorsCount, Settings settings) {
+		final DistanceType distanceType = settings.distanceType();
+		final int attempts = settings.attempts();
+
+		// split one generator per attempt up front, so results do not depend on
+		// which thread runs which attempt
+		final SplittableRandom root = settings.seed() == null ? new SplittableRandom() : new SplittableRandom(settings.seed());
+		final SplittableRandom[] randoms = new SplittableRandom[attempts];
+		for (int i = 0; i < attempts; i++) {
+			randoms[i] = root.split();
+		}
+		final int fixed = locked.size();
+		if (attempts == 1) {
+			return finish(generate(locked, colorsCount, settings, 0, randoms[0], settings.executor()), fixed, settings);
 		}
 
-		System.out.println("Generate palettes for " + colorsCount + " colors using color distance \"" + distanceType + "\"");
+		// attempts block on nested work, which only a fork-join pool can steal
+		final Executor executor = settings.executor();
+		final Executor nested = executor instanceof ForkJoinPool ? executor : null;
+		final List<List<double[]>> palettes = new ArrayList<>(Collections.nCopies(attempts, null));
+		final double[] minDistances = new double[attempts];
+		Parallel.forEach(executor, attempts, i -> {
+			List<double[]> palette = generate(locked, colorsCount, settings, i, randoms[i], nested);
+			palettes.set(i, palette);
+			minDistances[i] = ColorDistance.minDistance(palette, fixed, distanceType);
+		});
+
+		int best = 0;
+		for (int i = 1; i < attempts; i++) {
+			if (minDistances[i] > minDistances[best]) {
+				best = i;
+			}
+		}
+		return finish(palettes.get(best), fixed, settings);
+	}
+
+	/**
+	 * Orders the palette if requested, and strips the locked colors.
+	 */
+	private static List<double[]> finish(List<double[]> palette, int fixed, Settings settings) {
+		if (settings.diffSort()) {
+			palette = PaletteSort.diffSort(palette, fixed, settings.distanceType(), settings.executor());
+		}
+		return fixed == 0 ? palette : new ArrayList<>(palette.subList(fixed, palette.size()));
+	}
+
+	/**
+	 * Makes a single generation attempt.
+	 *
+	 * @return the palette, locked colors first
+	 */
+	private static List<double[]> generate(List<double[]> locked, int colorsCount, Settings settings, int attempt, SplittableRandom random,
+			Executor executor) {
+		final Predicate<double[]> checkColorIn = settings.filter();
+		final ColorConstraint constraint = settings.constraint();
+		final boolean forceMode = settings.forceMode();
+		final int quality = settings.quality();
+		final boolean ultraPrecision = settings.ultraPrecision();
+		final DistanceType distanceType = settings.distanceType();
+
+		// Default values
+		Predicate<double[]> checkColor = checkColorIn == null ? rgb -> true : checkColorIn;
 
 		if (forceMode) {
 			// Force Vector Mode
 
-			List<double[]> colors = new ArrayList<>();
+			List<double[]> colors = new ArrayList<>(locked);
 
 			// It will be necessary to check if a Lab color exists in the rgb space.
 			Predicate<double[]> checkLab = (lab) -> {
-				double[] rgb = Conversion.labToRgb(lab);
-				return Conversion.validateLab(lab) && checkColor.test(rgb);
+				if (constraint != null && !constraint.test(lab)) {
+					return false;
+				}
+				double[] rgb = Gamut.toRgb(lab, new double[3]);
+				return rgb != null && checkColor.test(rgb);
 			};
 
 			// Init
 			for (int i = 0; i < colorsCount; i++) {
 				// Find a valid Lab color
-				double[] color = { 100 * Math.random(), 100 * (2 * Math.random() - 1), 100 * (2 * Math.random() - 1) };
+				double[] color = randomLab(random);
 				while (!checkLab.test(color)) {
-					color = new double[] { 100 * Math.random(), 100 * (2 * Math.random() - 1), 100 * (2 * Math.random() - 1) };
+					color = randomLab(random);
 				}
 				colors.add(color);
 			}
 
 			// Force vector: repulsion
-			double repulsion = 100;
-			double speed = 100;
-			int steps = quality * 20;
-			while (steps-- > 0) {
-				// Init
-				double[][] vectors = new double[colors.size()][3];
-				// Compute Force
-				for (int i = 0; i < colors.size(); i++) {
-					double[] colorA = colors.get(i);
-					for (int j = 0; j < i; j++) {
-						double[] colorB = colors.get(j);
-
-						// repulsion force
-						double dl = colorA[0] - colorB[0];
-						double da = colorA[1] - colorB[1];
-						double db = colorA[2] - colorB[2];
-						double d = ColorDistance.getColorDistance(colorA, colorB, distanceType);
-						if (d > 0) {
-							double force = repulsion / Math.pow(d, 2);
-
-							vectors[i][0] += dl * force / d;
-							vectors[i][1] += da * force / d;
-							vectors[i][2] += db * force / d;
-
-							vectors[j][0] -= dl * force / d;
-							vectors[j][1] -= da * force / d;
-							vectors[j][2] -= db * force / d;
-						} else {
-							// Jitter
-							vectors[j][0] += 2 - 4 * Math.random();
-							vectors[j][1] += 2 - 4 * Math.random();
-							vectors[j][2] += 2 - 4 * Math.random();
-						}
-					}
-				}
-				// Apply Force
-				for (int i = 0; i < colors.size(); i++) {
-					double[] color = colors.get(i);
-					double displacement = speed
-							* Math.sqrt(Math.pow(vectors[i][0], 2) + Math.pow(vectors[i][1], 2) + Math.pow(vectors[i][2], 2));
-					if (displacement > 0) {
-						double ratio = speed * Math.min(0.1, displacement) / displacement;
-						double[] candidateLab = { color[0] + vectors[i][0] * ratio, color[1] + vectors[i][1] * ratio,
-								color[2] + vectors[i][2] * ratio };
-						if (checkLab.test(candidateLab)) {
-							colors.set(i, candidateLab);
-						}
-					}
-				}
-			}
-			return colors;
+			ForceVector layout = new ForceVector(colors, locked.size(), checkColorIn, constraint, distanceType, executor, random);
+			return optimize(layout, locked.size(), quality * 20, settings, attempt);
 
 		} else {
 			// K-Means Mode
-			Predicate<double[]> checkColor2 = (lab) -> {
-				// Check that a color is valid: it must verify our checkColor condition, but
-				// also be in the color space
-				double[] rgb = Conversion.labToRgb(lab);
+			// The sample space is cached, so repeated calls with the same filter and
+			// constraint share it
+			final boolean miniBatch = settings.clustering() == Clustering.MINI_BATCH_K_MEANS;
+			final boolean adaptive = settings.adaptivePrecision();
+			// adaptive k-means starts on the normal grid; mini-batch k-means takes the
+			// ultra grid
+			SampleSpace sampleSpace = SampleSpace.get(checkColorIn, constraint, adaptive ? miniBatch : ultraPrecision);
+			double[] rgb = new double[3];
 
-				return Conversion.validateLab(lab) && checkColor.test(rgb);
-			};
-
-			List<double[]> kMeans = new ArrayList<>();
+			List<double[]> kMeans = new ArrayList<>(locked);
 			for (int i = 0; i < colorsCount; i++) {
-				double[] lab = { 100 * Math.random(), 100 * (2 * Math.random() - 1), 100 * (2 * Math.random() - 1) };
+				double[] lab = randomLab(random);
 				int failsafe = 10;
-				while (!checkColor2.test(lab) && failsafe-- > 0) {
-					lab = new double[] { 100 * Math.random(), 100 * (2 * Math.random() - 1), 100 * (2 * Math.random() - 1) };
+				while (!sampleSpace.accepts(lab, rgb) && failsafe-- > 0) {
+					lab = randomLab(random);
 				}
 				kMeans.add(lab);
 			}
 
-			List<double[]> colorSamples = new ArrayList<>();
-			List<Integer> samplesClosest = new ArrayList<>();
-			if (ultraPrecision) {
-				for (int l = 0; l <= 100; l += 1) {
-					for (int a = -100; a <= 100; a += 5) {
-						for (int b = -100; b <= 100; b += 5) {
-							if (checkColor2.test(new double[] { l, a, b })) {
-								colorSamples.add(new double[] { l, a, b });
-								samplesClosest.add(null);
-							}
-						}
-					}
-				}
-			} else {
-				for (int l = 0; l <= 100; l += 5) {
-					for (int a = -100; a <= 100; a += 10) {
-						for (int b = -100; b <= 100; b += 10) {
-							if (checkColor2.test(new double[] { l, a, b })) {
-								colorSamples.add(new double[] { l, a, b });
-								samplesClosest.add(null);
-							}
-						}
-					}
-				}
+			if (miniBatch) {
+				final int batchSize = settings.batchSize() == 0 ? Math.max(1024, 4 * kMeans.size()) : settings.batchSize();
+				MiniBatchKMeans engine = new MiniBatchKMeans(sampleSpace, kMeans, locked.size(), batchSize, distanceType, executor, random);
+				return optimize(engine, locked.size(), quality, settings, attempt);
 			}
+			if (adaptive) {
+				// converge on the normal grid with up to half of the iterations, then refine
+				SampleSpace fine = SampleSpace.get(checkColorIn, constraint, true);
+				CoarseToFineKMeans engine = new CoarseToFineKMeans(sampleSpace, fine, kMeans, locked.size(), quality / 2, settings.tolerance(),
+						distanceType, executor);
+				return optimize(engine, locked.size(), quality, settings, attempt);
+			}
+			KMeans engine = new KMeans(sampleSpace, kMeans, locked.size(), distanceType, executor);
+			return optimize(engine, locked.size(), quality, settings, attempt);
+		}
+	}
 
-			// Steps
-			int steps = quality;
-			while (steps-- > 0) {
-				// kMeans -> Samples Closest
-				for (int i = 0; i < colorSamples.size(); i++) {
-					double[] lab = colorSamples.get(i);
-					double minDistance = Double.POSITIVE_INFINITY;
-					for (int j = 0; j < kMeans.size(); j++) {
-						double[] kMean = kMeans.get(j);
-						double distance = ColorDistance.getColorDistance(lab, kMean, distanceType);
-						if (distance < minDistance) {
-							minDistance = distance;
-							samplesClosest.set(i, j);
-						}
-					}
-				}
-
-				// Samples -> kMeans
-				List<double[]> freeColorSamples = new ArrayList<>(colorSamples);
-				for (int j = 0; j < kMeans.size(); j++) {
-					int count = 0;
-					double[] candidateKMean = { 0, 0, 0 };
-					for (int i = 0; i < colorSamples.size(); i++) {
-						if (samplesClosest.get(i) == j) {
-							count++;
-							candidateKMean[0] += colorSamples.get(i)[0];
-							candidateKMean[1] += colorSamples.get(i)[1];
-							candidateKMean[2] += colorSamples.get(i)[2];
-						}
-					}
-					if (count != 0) {
-						candidateKMean[0] /= count;
-						candidateKMean[1] /= count;
-						candidateKMean[2] /= count;
-					}
-
-					if (count != 0 && checkColor2.test(new double[] { candidateKMean[0], candidateKMean[1], candidateKMean[2] })) {
-						kMeans.set(j, candidateKMean);
-					} else {
-						// The candidate kMean is out of the boundaries of the color space, or unfound.
-						if (freeColorSamples.size() > 0) {
-							// We just search for the closest FREE color of the candidate kMean
-							double minDistance = Double.POSITIVE_INFINITY;
-							int closest = -1;
-							for (int i = 0; i < freeColorSamples.size(); i++) {
-								double distance = ColorDistance.getColorDistance(freeColorSamples.get(i), candidateKMean, distanceType);
-								if (distance < minDistance) {
-									minDistance = distance;
-									closest = i;
-								}
-							}
-							if (closest >= 0) {
-								kMeans.set(j, colorSamples.get(closest));
-							}
-
-						} else {
-							// Then we just search for the closest color of the candidate kMean
-							double minDistance = Double.POSITIVE_INFINITY;
-							int closest = -1;
-							for (int i = 0; i < colorSamples.size(); i++) {
-								double distance = ColorDistance.getColorDistance(colorSamples.get(i), candidateKMean, distanceType);
-								if (distance < minDistance) {
-									minDistance = distance;
-									closest = i;
-								}
-							}
-							if (closest >= 0) {
-								kMeans.set(j, colorSamples.get(closest));
-							}
-						}
-					}
-
-					final int current_j = j;
-					freeColorSamples.removeIf(color -> Arrays.equals(color, kMeans.get(current_j)));
-				}
+	/**
+	 * Runs an optimizer until it converges (within the settings' tolerance) or
+	 * reaches the given number of steps, reporting each step to the settings'
+	 * listener.
+	 *
+	 * @param fixed number of leading palette colors that are locked
+	 * @return the optimized palette
+	 */
+	private static List<double[]> optimize(Optimizer optimizer, int fixed, int steps, Settings settings, int attempt) {
+		final GenerationListener listener = settings.listener();
+		if (listener == null) {
+			optimizer.run(steps, settings.tolerance());
+			return optimizer.palette();
+		}
+		final long start = System.nanoTime();
+		for (int step = 1; step <= steps; step++) {
+			final double shift = optimizer.step();
+			final List<double[]> palette = optimizer.palette();
+			listener.iteration(new IterationStats(attempt, step, shift, optimizer.reassigned(), optimizer.distanceEvaluations(),
+					ColorDistance.minDistance(palette, fixed, settings.distanceType()), System.nanoTime() - start, palette));
+			if (shift <= settings.tolerance()) {
+				break;
 			}
-			return kMeans;
 		}
+		return optimizer.palette();
+	}
+
+	private static double[] randomLab(SplittableRandom random) {
+		return new double[] { 100 * random.nextDouble(), 100 * (2 * random.nextDouble() - 1), 100 * (2 * random.nextDouble() - 1) };
 	}
 
 }
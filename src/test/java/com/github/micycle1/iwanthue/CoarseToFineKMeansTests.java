@@ -0,0 +1,123 @@
+package com.github.micycle1.iwanthue;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import com.github.micycle1.iwanthue.ColorDistance.DistanceType;
+
+class CoarseToFineKMeansTests {
+
+	@ParameterizedTest
+	@CsvSource({ "EUCLIDEAN, 12", "CMC, 8" })
+	void run_convergesOnFineSamples(DistanceType distanceType, int colorsCount) {
+		SampleSpace coarse = SampleSpace.get(null, false);
+		SampleSpace fine = SampleSpace.get(null, true);
+		List<double[]> initial = randomCentroids(colorsCount, new Random(colorsCount));
+
+		CoarseToFineKMeans adaptive = new CoarseToFineKMeans(coarse, fine, initial, 0, 50, 0, distanceType, null);
+		int steps = adaptive.run(200, 0);
+		assertTrue(adaptive.refined());
+		if (distanceType == DistanceType.EUCLIDEAN) {
+			// CMC k-means may cycle, on any grid
+			assertTrue(steps < 200);
+		}
+
+		KMeans ultra = new KMeans(fine, initial, distanceType);
+		ultra.run(200, 0);
+		double expected = ColorDistance.minDistance(ultra.palette(), distanceType);
+		double actual = ColorDistance.minDistance(adaptive.palette(), distanceType);
+		assertTrue(actual > 0.8 * expected, actual + " vs " + expected);
+		double[] rgb = new double[3];
+		for (double[] lab : adaptive.palette()) {
+			assertTrue(fine.accepts(lab, rgb));
+		}
+	}
+
+	@Test
+	void step_refinedSpace_evaluatesFewerDistances() {
+		SampleSpace coarse = SampleSpace.get(null, false);
+		SampleSpace fine = SampleSpace.get(null, true);
+		List<double[]> initial = randomCentroids(6, new Random(3));
+
+		CoarseToFineKMeans adaptive = new CoarseToFineKMeans(coarse, fine, initial, 0, 0, 0, DistanceType.CMC, null);
+		adaptive.step();
+		assertTrue(adaptive.refined());
+		KMeans ultra = new KMeans(fine, initial, DistanceType.CMC);
+		ultra.step();
+		assertTrue(adaptive.distanceEvaluations() < ultra.distanceEvaluations() / 2);
+	}
+
+	@Test
+	void run_fixedCentroids_doNotMove() {
+		SampleSpace coarse = SampleSpace.get(null, false);
+		SampleSpace fine = SampleSpace.get(null, true);
+		List<double[]> initial = randomCentroids(7, new Random(8));
+
+		CoarseToFineKMeans adaptive = new CoarseToFineKMeans(coarse, fine, initial, 2, 5, 0, DistanceType.EUCLIDEAN, null);
+		adaptive.run(20, -1);
+		assertTrue(adaptive.refined());
+		for (int j = 0; j < 2; j++) {
+			assertArrayEquals(initial.get(j), adaptive.palette().get(j));
+		}
+	}
+
+	@Test
+	void move_rejectedCentroid_takesClosestFreeSampleOfRefinedSpace() {
+		// saturated colors only: the mean of a large cluster is rejected
+		Predicate<double[]> filter = rgb -> Math.max(rgb[0], Math.max(rgb[1], rgb[2])) - Math.min(rgb[0], Math.min(rgb[1], rgb[2])) > 100;
+		SampleSpace coarse = SampleSpace.get(filter, false);
+		SampleSpace fine = SampleSpace.get(filter, true);
+		double[] start = { 50, 20, -20 };
+		SampleSpace refined = coarse.refine(fine, new int[] { coarse.cellOf(start[0], start[1], start[2]) }, 1, 1);
+		assertFalse(refined.grid());
+		// the fixed centroid takes the first sample
+		List<double[]> initial = List.of(refined.get(0), start);
+
+		KMeans kMeans = new KMeans(refined, initial, 1, DistanceType.EUCLIDEAN, null);
+		kMeans.step();
+
+		double[] mean = new double[3];
+		double weight = 0;
+		for (int i = 0; i < refined.size; i++) {
+			double[] lab = refined.get(i);
+			if (distance(lab, start) < distance(lab, initial.get(0))) {
+				for (int c = 0; c < 3; c++) {
+					mean[c] += refined.weight(i) * lab[c];
+				}
+				weight += refined.weight(i);
+			}
+		}
+		for (int c = 0; c < 3; c++) {
+			mean[c] /= weight;
+		}
+		assertFalse(refined.accepts(mean, new double[3]));
+		int closest = -1;
+		for (int i = 1; i < refined.size; i++) {
+			if (closest < 0 || distance(refined.get(i), mean) < distance(refined.get(closest), mean)) {
+				closest = i;
+			}
+		}
+		assertArrayEquals(refined.get(closest), kMeans.centroids().get(1));
+	}
+
+	private static double distance(double[] lab1, double[] lab2) {
+		return ColorDistance.getColorDistance(lab1, lab2, DistanceType.EUCLIDEAN);
+	}
+
+	private static List<double[]> randomCentroids(int count, Random random) {
+		List<double[]> centroids = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			centroids.add(new double[] { 100 * random.nextDouble(), 100 * (2 * random.nextDouble() - 1), 100 * (2 * random.nextDouble() - 1) });
+		}
+		return centroids;
+	}
+
+}
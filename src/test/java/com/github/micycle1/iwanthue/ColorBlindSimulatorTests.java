@@ -0,0 +1,101 @@
+package com.github.micycle1.iwanthue;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import com.github.micycle1.iwanthue.ColorBlindSimulator.ConfusionType;
+
+class ColorBlindSimulatorTests {
+
+	@ParameterizedTest
+	@EnumSource(ConfusionType.class)
+	void simulateArgb_matchesLabSimulation(ConfusionType type) {
+		Random random = new Random(type.ordinal());
+		int[] argb = new int[1000];
+		for (int i = 0; i < argb.length; i++) {
+			argb[i] = random.nextInt();
+		}
+		int[] out = new int[argb.length];
+		ColorBlindSimulator.simulate(argb, out, 40, 25, type, 1, null);
+
+		for (int i = 0; i < argb.length; i++) {
+			double[] rgb = { (argb[i] >>> 16) & 0xFF, (argb[i] >>> 8) & 0xFF, argb[i] & 0xFF };
+			double[] expected = Conversion.labToRgb(ColorBlindSimulator.simulate(Conversion.rgbToLab(rgb), type));
+			assertEquals(argb[i] >>> 24, out[i] >>> 24);
+			if (Double.isNaN(expected[0])) {
+				// a zero channel may not survive the Lab round trip
+				assertTrue(rgb[0] == 0 || rgb[1] == 0 || rgb[2] == 0);
+				continue;
+			}
+			assertEquals(Conversion.clamp(expected[0]), (out[i] >>> 16) & 0xFF, 1);
+			assertEquals(Conversion.clamp(expected[1]), (out[i] >>> 8) & 0xFF, 1);
+			assertEquals(Conversion.clamp(expected[2]), out[i] & 0xFF, 1);
+		}
+	}
+
+	@Test
+	void simulateArgb_independentOfExecutor() {
+		// more distinct colors than a tile's cache holds, and partial tiles
+		int width = 700;
+		int height = 300;
+		Random random = new Random(5);
+		int[] argb = new int[width * height];
+		for (int i = 0; i < argb.length; i++) {
+			argb[i] = i % 7 == 0 ? 0xFF336699 : random.nextInt();
+		}
+		int[] serial = new int[argb.length];
+		ColorBlindSimulator.simulate(argb, serial, width, height, ConfusionType.DEUTERANOPIA, 0.8, null);
+
+		ForkJoinPool pool = new ForkJoinPool(3);
+		ExecutorService fixed = Executors.newFixedThreadPool(2);
+		try {
+			int[] forkJoin = new int[argb.length];
+			ColorBlindSimulator.simulate(argb, forkJoin, width, height, ConfusionType.DEUTERANOPIA, 0.8, pool);
+			assertArrayEquals(serial, forkJoin);
+			int[] inPlace = argb.clone();
+			ColorBlindSimulator.simulate(inPlace, inPlace, width, height, ConfusionType.DEUTERANOPIA, 0.8, fixed);
+			assertArrayEquals(serial, inPlace);
+		} finally {
+			pool.shutdown();
+			fixed.shutdown();
+		}
+	}
+
+	@Test
+	void simulateImage_matchesArgb() {
+		int width = 300;
+		int height = 270;
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				image.setRGB(x, y, ((x * 255 / width) << 24) | ((x & 0xF0) << 16) | ((y & 0xF8) << 8) | ((x + y) & 0xFF));
+			}
+		}
+		int[] argb = image.getRGB(0, 0, width, height, null, 0, width);
+		int[] expected = new int[argb.length];
+		ColorBlindSimulator.simulate(argb, expected, width, height, ConfusionType.TRITANOPIA, 1, null);
+
+		BufferedImage simulated = ColorBlindSimulator.simulate(image, ConfusionType.TRITANOPIA, 1, ForkJoinPool.commonPool());
+		assertEquals(width, simulated.getWidth());
+		assertEquals(height, simulated.getHeight());
+		assertArrayEquals(expected, simulated.getRGB(0, 0, width, height, null, 0, width));
+	}
+
+	@Test
+	void simulateArgb_noAmount_keepsColors() {
+		int[] argb = { 0xFF000000, 0xFFFFFFFF, 0x80FF0000, 0xFF12AB34, 0x00000000 };
+		int[] out = new int[argb.length];
+		ColorBlindSimulator.simulate(argb, out, argb.length, 1, ConfusionType.PROTANOPIA, 0, null);
+		assertArrayEquals(argb, out);
+	}
+
+}
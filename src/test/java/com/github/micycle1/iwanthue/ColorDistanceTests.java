@@ -2,9 +2,13 @@ package com.github.micycle1.iwanthue;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ThreadLocalRandom;
 
 import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
 
 import com.github.micycle1.iwanthue.ColorDistance.DistanceType;
 
@@ -22,6 +26,148 @@ class ColorDistanceTests {
 		assertEquals(euclidianDist, calculateDistance(labColor1, labColor2), 1e-6);
 	}
 
+	@RepeatedTest(NUM_TESTS)
+	void testPreparedMatchesUnprepared() {
+		double[] labColor1 = generateRandomLabColor();
+		double[] labColor2 = generateRandomLabColor();
+		PreparedColors colors = new PreparedColors(2, true);
+		colors.set(0, labColor1[0], labColor1[1], labColor1[2]);
+		colors.set(1, labColor2[0], labColor2[1], labColor2[2]);
+
+		for (DistanceType type : DistanceType.values()) {
+			assertEquals(ColorDistance.getColorDistance(labColor1, labColor2, type), ColorDistance.getColorDistance(colors, 0, colors, 1, type));
+			assertEquals(ColorDistance.getColorDistance(labColor2, labColor1, type), ColorDistance.getColorDistance(colors, 1, colors, 0, type));
+		}
+	}
+
+	@RepeatedTest(10)
+	void testMinDistanceMatchesUnprepared() {
+		final List<double[]> palette = new ArrayList<>();
+		for (int i = 0; i < 12; i++) {
+			palette.add(generateRandomLabColor());
+		}
+
+		for (DistanceType type : DistanceType.values()) {
+			double min = Double.MAX_VALUE;
+			for (int i = 2; i < palette.size(); i++) {
+				for (int j = 0; j < i; j++) {
+					min = Math.min(min, ColorDistance.getColorDistance(palette.get(i), palette.get(j), type));
+				}
+			}
+			assertEquals(min, ColorDistance.minDistance(palette, 2, type));
+		}
+	}
+
+	/**
+	 * Test data from Sharma, Wu and Dalal, "The CIEDE2000 Color-Difference
+	 * Formula: Implementation Notes, Supplementary Test Data, and Mathematical
+	 * Observations" (2005), table 1.
+	 */
+	@ParameterizedTest
+	@CsvSource({ "50.0000, 2.6772, -79.7751, 50.0000, 0.0000, -82.7485, 2.0425",
+			"50.0000, 3.1571, -77.2803, 50.0000, 0.0000, -82.7485, 2.8615",
+			"50.0000, 2.8361, -74.0200, 50.0000, 0.0000, -82.7485, 3.4412",
+			"50.0000, -1.3802, -84.2814, 50.0000, 0.0000, -82.7485, 1.0000",
+			"50.0000, -1.1848, -84.8006, 50.0000, 0.0000, -82.7485, 1.0000",
+			"50.0000, -0.9009, -85.5211, 50.0000, 0.0000, -82.7485, 1.0000",
+			"50.0000, 0.0000, 0.0000, 50.0000, -1.0000, 2.0000, 2.3669",
+			"50.0000, -1.0000, 2.0000, 50.0000, 0.0000, 0.0000, 2.3669",
+			"50.0000, 2.4900, -0.0010, 50.0000, -2.4900, 0.0009, 7.1792",
+			"50.0000, 2.4900, -0.0010, 50.0000, -2.4900, 0.0010, 7.1792",
+			"50.0000, 2.4900, -0.0010, 50.0000, -2.4900, 0.0011, 7.2195",
+			"50.0000, 2.4900, -0.0010, 50.0000, -2.4900, 0.0012, 7.2195",
+			"50.0000, -0.0010, 2.4900, 50.0000, 0.0009, -2.4900, 4.8045",
+			"50.0000, -0.0010, 2.4900, 50.0000, 0.0010, -2.4900, 4.8045",
+			"50.0000, -0.0010, 2.4900, 50.0000, 0.0011, -2.4900, 4.7461",
+			"50.0000, 2.5000, 0.0000, 50.0000, 0.0000, -2.5000, 4.3065",
+			"50.0000, 2.5000, 0.0000, 73.0000, 25.0000, -18.0000, 27.1492",
+			"50.0000, 2.5000, 0.0000, 61.0000, -5.0000, 29.0000, 22.8977",
+			"50.0000, 2.5000, 0.0000, 56.0000, -27.0000, -3.0000, 31.9030",
+			"50.0000, 2.5000, 0.0000, 58.0000, 24.0000, 15.0000, 19.4535",
+			"50.0000, 2.5000, 0.0000, 50.0000, 3.1736, 0.5854, 1.0000",
+			"50.0000, 2.5000, 0.0000, 50.0000, 3.2972, 0.0000, 1.0000",
+			"50.0000, 2.5000, 0.0000, 50.0000, 1.8634, 0.5757, 1.0000",
+			"50.0000, 2.5000, 0.0000, 50.0000, 3.2592, 0.3350, 1.0000",
+			"60.2574, -34.0099, 36.2677, 60.4626, -34.1751, 39.4387, 1.2644",
+			"63.0109, -31.0961, -5.8663, 62.8187, -29.7946, -4.0864, 1.2630",
+			"61.2901, 3.7196, -5.3901, 61.4292, 2.2480, -4.9620, 1.8731",
+			"35.0831, -44.1164, 3.7933, 35.0232, -40.0716, 1.5901, 1.8645",
+			"22.7233, 20.0904, -46.6940, 23.0331, 14.9730, -42.5619, 2.0373",
+			"36.4612, 47.8580, 18.3852, 36.2715, 50.5065, 21.2231, 1.4146",
+			"90.8027, -2.0831, 1.4410, 91.1528, -1.6435, 0.0447, 1.4441",
+			"90.9257, -0.5406, -0.9208, 88.6381, -0.8985, -0.7239, 1.5381",
+			"6.7747, -0.2908, -2.4247, 5.8714, -0.0985, -2.2286, 0.6377",
+			"2.0776, 0.0795, -1.1350, 0.9033, -0.0636, -0.5514, 0.9082" })
+	void testCiede2000SharmaData(double L1, double a1, double b1, double L2, double a2, double b2, double expected) {
+		double[] lab1 = { L1, a1, b1 };
+		double[] lab2 = { L2, a2, b2 };
+		assertEquals(expected, ColorDistance.getColorDistance(lab1, lab2, DistanceType.CIEDE2000), 1e-4);
+		assertEquals(expected, ColorDistance.getColorDistance(lab2, lab1, DistanceType.CIEDE2000), 1e-4);
+	}
+
+	@RepeatedTest(NUM_TESTS)
+	void testCiede2000MatchesReference() {
+		for (int i = 0; i < 100; i++) {
+			double[] labColor1 = generateRandomLabColor();
+			double[] labColor2 = generateRandomLabColor();
+			if (i % 4 == 0) {
+				labColor2[1] = 0; // a neutral color
+				labColor2[2] = 0;
+			}
+			assertEquals(referenceCiede2000(labColor1, labColor2), ColorDistance.getColorDistance(labColor1, labColor2, DistanceType.CIEDE2000),
+					1e-9);
+		}
+	}
+
+	/**
+	 * CIEDE2000, as written in Sharma, Wu and Dalal's paper (in degrees).
+	 */
+	private static double referenceCiede2000(double[] lab1, double[] lab2) {
+		double C1 = Math.hypot(lab1[1], lab1[2]);
+		double C2 = Math.hypot(lab2[1], lab2[2]);
+		double meanC7 = Math.pow((C1 + C2) / 2, 7);
+		double G = 0.5 * (1 - Math.sqrt(meanC7 / (meanC7 + Math.pow(25, 7))));
+		double a1p = (1 + G) * lab1[1];
+		double a2p = (1 + G) * lab2[1];
+		double C1p = Math.hypot(a1p, lab1[2]);
+		double C2p = Math.hypot(a2p, lab2[2]);
+		double h1p = C1p == 0 ? 0 : (Math.toDegrees(Math.atan2(lab1[2], a1p)) + 360) % 360;
+		double h2p = C2p == 0 ? 0 : (Math.toDegrees(Math.atan2(lab2[2], a2p)) + 360) % 360;
+
+		double dLp = lab2[0] - lab1[0];
+		double dCp = C2p - C1p;
+		double dhp = 0;
+		if (C1p * C2p != 0) {
+			dhp = h2p - h1p;
+			if (dhp > 180) {
+				dhp -= 360;
+			} else if (dhp < -180) {
+				dhp += 360;
+			}
+		}
+		double dHp = 2 * Math.sqrt(C1p * C2p) * Math.sin(Math.toRadians(dhp / 2));
+
+		double meanL = (lab1[0] + lab2[0]) / 2;
+		double meanCp = (C1p + C2p) / 2;
+		double meanhp = h1p + h2p;
+		if (C1p * C2p != 0) {
+			if (Math.abs(h1p - h2p) > 180) {
+				meanhp += meanhp < 360 ? 360 : -360;
+			}
+			meanhp /= 2;
+		}
+		double T = 1 - 0.17 * Math.cos(Math.toRadians(meanhp - 30)) + 0.24 * Math.cos(Math.toRadians(2 * meanhp))
+				+ 0.32 * Math.cos(Math.toRadians(3 * meanhp + 6)) - 0.20 * Math.cos(Math.toRadians(4 * meanhp - 63));
+		double dTheta = 30 * Math.exp(-Math.pow((meanhp - 275) / 25, 2));
+		double meanCp7 = Math.pow(meanCp, 7);
+		double RC = 2 * Math.sqrt(meanCp7 / (meanCp7 + Math.pow(25, 7)));
+		double SL = 1 + 0.015 * Math.pow(meanL - 50, 2) / Math.sqrt(20 + Math.pow(meanL - 50, 2));
+		double SC = 1 + 0.045 * meanCp;
+		double SH = 1 + 0.015 * meanCp * T;
+		double RT = -Math.sin(Math.toRadians(2 * dTheta)) * RC;
+		return Math.sqrt(Math.pow(dLp / SL, 2) + Math.pow(dCp / SC, 2) + Math.pow(dHp / SH, 2) + RT * (dCp / SC) * (dHp / SH));
+	}
+
 	private static double calculateDistance(double[] point1, double[] point2) {
 		double dx = point1[0] - point2[0];
 		double dy = point1[1] - point2[1];
@@ -48,4 +48,76 @@ public class ConversionTests {
 		rgb[2] = ThreadLocalRandom.current().nextDouble() * 255; // B: 0-255
 		return rgb;
 	}
-}
\ No newline at end of file
+
+	@Test
+	void labToRgbBatch_labGrid_withinErrorBound() {
+		// ultra-precision grid, including out-of-gamut colors
+		int count = 101 * 51 * 51;
+		double[] lab = new double[3 * count];
+		int i = 0;
+		for (int l = 0; l <= 100; l++) {
+			for (int a = -125; a <= 125; a += 5) {
+				for (int b = -125; b <= 125; b += 5) {
+					lab[i++] = l;
+					lab[i++] = a;
+					lab[i++] = b;
+				}
+			}
+		}
+		double[] rgb = new double[3 * count];
+		Conversion.labToRgb(lab, rgb, count);
+		for (int c = 0; c < count; c++) {
+			double[] expected = Conversion.labToRgb(new double[] { lab[3 * c], lab[3 * c + 1], lab[3 * c + 2] });
+			assertArrayEquals(expected, new double[] { rgb[3 * c], rgb[3 * c + 1], rgb[3 * c + 2] }, 0.01);
+		}
+	}
+
+	@Test
+	void rgbToLabBatch_randomColors_withinErrorBound() {
+		int count = 10000;
+		double[] rgb = new double[3 * count];
+		for (int i = 0; i < rgb.length; i++) {
+			// mix integer (table) and fractional channel values
+			double c = ThreadLocalRandom.current().nextDouble() * 255;
+			rgb[i] = i % 2 == 0 ? Math.floor(c) : c;
+		}
+		double[] lab = new double[3 * count];
+		Conversion.rgbToLab(rgb, lab, count);
+		for (int c = 0; c < count; c++) {
+			double[] expected = Conversion.rgbToLab(new double[] { rgb[3 * c], rgb[3 * c + 1], rgb[3 * c + 2] });
+			assertArrayEquals(expected, new double[] { lab[3 * c], lab[3 * c + 1], lab[3 * c + 2] }, 1e-9);
+		}
+	}
+
+	@Test
+	void argbToLab_allChannelValues_withinErrorBound() {
+		int[] argb = new int[256 * 3];
+		for (int v = 0; v < 256; v++) {
+			argb[v] = 0xFF000000 | v << 16;
+			argb[256 + v] = 0x80000000 | v << 8 | (255 - v);
+			argb[512 + v] = v << 16 | v << 8 | v;
+		}
+		double[] lab = new double[3 + 3 * argb.length];
+		Conversion.argbToLab(argb, 0, lab, 3, argb.length);
+		for (int c = 0; c < argb.length; c++) {
+			double[] rgb = { (argb[c] >> 16) & 0xFF, (argb[c] >> 8) & 0xFF, argb[c] & 0xFF };
+			double[] expected = Conversion.rgbToLab(rgb);
+			assertArrayEquals(expected, new double[] { lab[3 + 3 * c], lab[4 + 3 * c], lab[5 + 3 * c] }, 1e-9);
+		}
+	}
+
+	@RepeatedTest(NUM_TESTS)
+	void argbToLabToArgb_randomColors_returnsOriginalArgb() {
+		int[] argb = new int[16];
+		for (int i = 0; i < argb.length; i++) {
+			argb[i] = 0xFF000000 | ThreadLocalRandom.current().nextInt(1 << 24);
+		}
+		double[] lab = new double[3 * argb.length];
+		Conversion.argbToLab(argb, 0, lab, 0, argb.length);
+		int[] converted = new int[argb.length + 1];
+		Conversion.labToArgb(lab, 0, converted, 1, argb.length);
+		for (int i = 0; i < argb.length; i++) {
+			assertEquals(argb[i], converted[i + 1]);
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package com.github.micycle1.iwanthue;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.micycle1.iwanthue.ColorDistance.DistanceType;
+
+class DistanceKernelsTests {
+
+	@Test
+	void scalarKernels_matchPairwiseDistances() {
+		DistanceKernels kernels = new DistanceKernels();
+		PreparedColors colors = randomColors(new Random(1), 1000);
+		PreparedColors centroids = randomColors(new Random(2), 20);
+		double[] out = new double[colors.size];
+		for (int j = 0; j < centroids.size; j++) {
+			// odd bounds, so runs do not start at 0
+			kernels.euclidean(colors, 3, 997, centroids.l[j], centroids.a[j], centroids.b[j], out);
+			assertMatches(colors, 3, 997, centroids, j, DistanceType.EUCLIDEAN, out);
+			kernels.cmc(colors, 3, 997, centroids, j, out);
+			assertMatches(colors, 3, 997, centroids, j, DistanceType.CMC, out);
+		}
+	}
+
+	@Test
+	void get_fallsBackToScalar() {
+		// the vector module is not on this module's class path
+		assertFalse(DistanceKernels.get().vectorized());
+	}
+
+	static void assertMatches(PreparedColors colors, int from, int to, PreparedColors other, int j, DistanceType type, double[] out) {
+		for (int i = from; i < to; i++) {
+			// bitwise, NaN included
+			assertEquals(ColorDistance.getColorDistance(colors, i, other, j, type), out[i - from]);
+		}
+	}
+
+	/**
+	 * @return random prepared colors, some of them neutral, duplicated or NaN
+	 */
+	static PreparedColors randomColors(Random random, int count) {
+		PreparedColors colors = new PreparedColors(count, false);
+		for (int i = 0; i < count; i++) {
+			double l = random.nextDouble() * 100;
+			double a = random.nextDouble() * 256 - 128;
+			double b = random.nextDouble() * 256 - 128;
+			switch (i % 10) {
+				case 1 :
+					colors.set(i, l, 0, 0);
+					break;
+				case 2 :
+					colors.set(i, 50, 0, 0);
+					break;
+				case 3 :
+					colors.set(i, Double.NaN, a, b);
+					break;
+				default :
+					colors.set(i, l, a, b);
+			}
+		}
+		return colors;
+	}
+
+}
@@ -0,0 +1,89 @@
+package com.github.micycle1.iwanthue;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import com.github.micycle1.iwanthue.ColorBlindSimulator.ConfusionType;
+import com.github.micycle1.iwanthue.ColorDistance.DistanceType;
+
+class DistanceMatrixTests {
+
+	@ParameterizedTest
+	@EnumSource(DistanceType.class)
+	void of_matchesPairwiseDistances(DistanceType type) {
+		// spans several tiles, with a partial last tile
+		List<double[]> palette = randomColors(new Random(type.ordinal()), 2 * DistanceMatrix.TILE + 13);
+		DistanceMatrix matrix = DistanceMatrix.of(palette, type, ForkJoinPool.commonPool());
+		assertEquals(palette.size(), matrix.size());
+
+		double[] condensed = matrix.condensed();
+		int k = 0;
+		for (int i = 0; i < palette.size(); i++) {
+			assertEquals(0, matrix.get(i, i));
+			for (int j = i + 1; j < palette.size(); j++, k++) {
+				double expected = ColorDistance.getColorDistance(palette.get(j), palette.get(i), type);
+				assertEquals(expected, condensed[k]);
+				assertEquals(expected, matrix.get(i, j));
+				assertEquals(expected, matrix.get(j, i));
+			}
+		}
+		assertEquals(k, condensed.length);
+		assertEquals(ColorDistance.minDistance(palette, type), matrix.closestPair().distance());
+	}
+
+	@ParameterizedTest
+	@EnumSource(ConfusionType.class)
+	void of_confusionType_matchesSimulatedDistances(ConfusionType type) {
+		List<double[]> palette = randomColors(new Random(7), 40);
+		DistanceMatrix matrix = DistanceMatrix.of(palette, type, null);
+		for (int i = 0; i < palette.size(); i++) {
+			for (int j = i + 1; j < palette.size(); j++) {
+				assertEquals(ColorDistance.getColorDistance(palette.get(j), palette.get(i), type), matrix.get(i, j));
+			}
+		}
+	}
+
+	@Test
+	void closestPair_findsPairAndIgnoresNaN() {
+		List<double[]> palette = randomColors(new Random(3), 100);
+		palette.set(90, new double[] { Double.NaN, 0, 0 });
+		palette.set(71, palette.get(17).clone());
+		PaletteStats.Pair pair = DistanceMatrix.of(palette, DistanceType.EUCLIDEAN, null).closestPair();
+		assertEquals(new PaletteStats.Pair(17, 71, 0), pair);
+
+		assertNull(DistanceMatrix.of(List.of(new double[] { 50, 0, 0 }), DistanceType.EUCLIDEAN, null).closestPair());
+	}
+
+	@Test
+	void paletteStats_closestPairs() {
+		List<double[]> palette = iWantHue.generate(30, new Settings().quality(5).seed(1L));
+		PaletteStats stats = PaletteStats.of(palette, DistanceType.CMC, ForkJoinPool.commonPool());
+		assertEquals(ColorDistance.minDistance(palette, DistanceType.CMC), stats.minDistance());
+		assertTrue(stats.meanDistance() > stats.minDistance());
+		for (ConfusionType type : ConfusionType.values()) {
+			PaletteStats.Pair pair = stats.closestByConfusion().get(type);
+			assertEquals(DistanceMatrix.of(palette, type, null).closestPair(), pair);
+			assertEquals(ColorDistance.getColorDistance(palette.get(pair.j()), palette.get(pair.i()), type), pair.distance());
+		}
+	}
+
+	private static List<double[]> randomColors(Random random, int count) {
+		List<double[]> colors = new ArrayList<>();
+		while (colors.size() < count) {
+			double[] lab = { random.nextDouble() * 100, random.nextDouble() * 200 - 100, random.nextDouble() * 200 - 100 };
+			if (Conversion.validateLab(lab)) {
+				colors.add(lab);
+			}
+		}
+		return colors;
+	}
+
+}
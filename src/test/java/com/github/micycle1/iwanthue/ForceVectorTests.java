@@ -0,0 +1,151 @@
+package com.github.micycle1.iwanthue;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import com.github.micycle1.iwanthue.ColorDistance.DistanceType;
+
+class ForceVectorTests {
+
+	@ParameterizedTest
+	@EnumSource(value = DistanceType.class, names = { "EUCLIDEAN", "CMC" })
+	void run_parallelExact_matchesSerial(DistanceType distanceType) {
+		List<double[]> initial = randomValidColors(ForceVector.PARALLEL_THRESHOLD + 10, new Random(1));
+
+		ForceVector serial = new ForceVector(initial, null, distanceType, null, new SplittableRandom(0));
+		serial.run(20, 0);
+
+		ForkJoinPool pool = new ForkJoinPool(3);
+		try {
+			ForceVector parallel = new ForceVector(initial, null, distanceType, pool, new SplittableRandom(0));
+			parallel.run(20, 0);
+			for (int i = 0; i < initial.size(); i++) {
+				assertArrayEquals(serial.colors().get(i), parallel.colors().get(i));
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	void run_coincidentColors_jitterIndependentOfExecutor() {
+		List<double[]> initial = randomValidColors(ForceVector.PARALLEL_THRESHOLD + 10, new Random(4));
+		for (int i = 0; i < initial.size(); i += 3) {
+			initial.set(i + 1, initial.get(i).clone());
+		}
+		int fixed = 5;
+
+		ForceVector serial = new ForceVector(initial, fixed, null, null, DistanceType.EUCLIDEAN, null, new SplittableRandom(0));
+		serial.run(5, 0);
+
+		ForkJoinPool pool = new ForkJoinPool(3);
+		try {
+			ForceVector parallel = new ForceVector(initial, fixed, null, null, DistanceType.EUCLIDEAN, pool, new SplittableRandom(0));
+			parallel.run(5, 0);
+			for (int i = 0; i < initial.size(); i++) {
+				assertArrayEquals(serial.colors().get(i), parallel.colors().get(i));
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@ParameterizedTest
+	// the opening angle is measured in Lab, which CMC distances stretch
+	@CsvSource({ "EUCLIDEAN, 0.01", "CMC, 0.1" })
+	void computeForces_barnesHut_approximatesExact(DistanceType distanceType, double tolerance) {
+		List<double[]> initial = randomValidColors(ForceVector.BARNES_HUT_THRESHOLD + 50, new Random(5));
+		ForceVector layout = new ForceVector(initial, null, distanceType, null, new SplittableRandom(0));
+		layout.computeForces(false);
+		double[] exact = layout.forces();
+		layout.computeForces(true);
+		double[] approximate = layout.forces();
+
+		double error = 0, magnitude = 0;
+		for (int i = 0; i < initial.size(); i++) {
+			double el = approximate[3 * i] - exact[3 * i];
+			double ea = approximate[3 * i + 1] - exact[3 * i + 1];
+			double eb = approximate[3 * i + 2] - exact[3 * i + 2];
+			error += Math.sqrt(el * el + ea * ea + eb * eb);
+			magnitude += Math.sqrt(exact[3 * i] * exact[3 * i] + exact[3 * i + 1] * exact[3 * i + 1] + exact[3 * i + 2] * exact[3 * i + 2]);
+		}
+		assertTrue(error < tolerance * magnitude, "relative error: " + error / magnitude);
+	}
+
+	@Test
+	void run_barnesHut_keepsColorsValidAndSpreadsThem() {
+		List<double[]> initial = randomValidColors(ForceVector.BARNES_HUT_THRESHOLD + 50, new Random(2));
+		double initialMin = minDistance(initial);
+
+		ForceVector layout = new ForceVector(initial, null, DistanceType.EUCLIDEAN, ForkJoinPool.commonPool(), new SplittableRandom(0));
+		layout.run(40, 0);
+		List<double[]> colors = layout.colors();
+
+		for (double[] color : colors) {
+			assertTrue(Conversion.validateLab(color));
+		}
+		assertTrue(minDistance(colors) > initialMin);
+	}
+
+	@Test
+	void run_stopsOnceDisplacementIsWithinTolerance() {
+		List<double[]> initial = randomValidColors(10, new Random(3));
+		ForceVector layout = new ForceVector(initial, null, DistanceType.EUCLIDEAN, null, new SplittableRandom(0));
+		assertEquals(1, layout.run(100, Double.POSITIVE_INFINITY));
+		assertEquals(100, layout.run(100, -1));
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = { 20, ForceVector.PARALLEL_THRESHOLD + 10, ForceVector.BARNES_HUT_THRESHOLD + 10 })
+	void run_fixedColors_neverMove(int count) {
+		List<double[]> initial = randomValidColors(count, new Random(count));
+		int fixed = count / 2;
+
+		ForceVector layout = new ForceVector(initial, fixed, null, null, DistanceType.EUCLIDEAN, ForkJoinPool.commonPool(), new SplittableRandom(0));
+		layout.run(10, -1);
+		List<double[]> colors = layout.colors();
+		int moved = 0;
+		for (int i = 0; i < count; i++) {
+			if (i < fixed) {
+				assertArrayEquals(initial.get(i), colors.get(i));
+			} else if (!Arrays.equals(initial.get(i), colors.get(i))) {
+				moved++;
+			}
+		}
+		assertTrue(moved > 0);
+	}
+
+	private static List<double[]> randomValidColors(int count, Random random) {
+		List<double[]> colors = new ArrayList<>();
+		while (colors.size() < count) {
+			double[] lab = { 100 * random.nextDouble(), 100 * (2 * random.nextDouble() - 1), 100 * (2 * random.nextDouble() - 1) };
+			if (Conversion.validateLab(lab)) {
+				colors.add(lab);
+			}
+		}
+		return colors;
+	}
+
+	private static double minDistance(List<double[]> colors) {
+		double min = Double.POSITIVE_INFINITY;
+		for (int i = 0; i < colors.size(); i++) {
+			for (int j = 0; j < i; j++) {
+				min = Math.min(min, ColorDistance.getColorDistance(colors.get(i), colors.get(j), DistanceType.EUCLIDEAN));
+			}
+		}
+		return min;
+	}
+
+}
@@ -0,0 +1,49 @@
+package com.github.micycle1.iwanthue;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class GamutTests {
+
+	@Test
+	void contains_ultraGrid_matchesExactCheck() {
+		for (int l = 0; l <= 100; l++) {
+			for (int a = -130; a <= 130; a++) {
+				for (int b = -130; b <= 130; b++) {
+					assertAgrees(new double[] { l, a, b });
+				}
+			}
+		}
+	}
+
+	@Test
+	void contains_randomColors_matchesExactCheck() {
+		Random random = new Random(9);
+		for (int i = 0; i < 1_000_000; i++) {
+			assertAgrees(new double[] { random.nextDouble() * 110 - 5, random.nextDouble() * 280 - 140, random.nextDouble() * 280 - 140 });
+		}
+	}
+
+	@Test
+	void contains_nanCoordinates_matchesExactCheck() {
+		assertAgrees(new double[] { 50, Double.NaN, Double.NaN });
+		assertAgrees(new double[] { 50, Double.NaN, 20 });
+		assertAgrees(new double[] { Double.NaN, 0, 0 });
+	}
+
+	private static void assertAgrees(double[] lab) {
+		double[] expectedRgb = Conversion.labToRgb(lab);
+		boolean expected = Conversion.validateRgb(expectedRgb);
+		assertEquals(expected, Gamut.contains(lab[0], lab[1], lab[2]));
+		double[] rgb = Gamut.toRgb(lab, new double[3]);
+		if (expected) {
+			assertArrayEquals(expectedRgb, rgb);
+		} else {
+			assertNull(rgb);
+		}
+	}
+
+}
@@ -0,0 +1,130 @@
+package com.github.micycle1.iwanthue;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import com.github.micycle1.iwanthue.ColorDistance.DistanceType;
+
+class ImagePaletteTests {
+
+	@Test
+	void extract_solidBlocks_byArea() {
+		int[] colors = { 0xFF2060C0, 0xFFE04010, 0xFF30A050 };
+		BufferedImage image = new BufferedImage(600, 300, BufferedImage.TYPE_INT_ARGB);
+		for (int y = 0; y < image.getHeight(); y++) {
+			for (int x = 0; x < image.getWidth(); x++) {
+				// blocks of 50%, 33% and 17% of the image
+				image.setRGB(x, y, colors[x < 300 ? 0 : x < 500 ? 1 : 2]);
+			}
+		}
+
+		List<double[]> palette = ImagePalette.extract(image, 5, new Settings().seed(1L));
+		assertEquals(3, palette.size());
+		for (int i = 0; i < colors.length; i++) {
+			double[] expected = new double[3];
+			Conversion.argbToLab(colors, i, expected, 0, 1);
+			assertArrayEquals(expected, palette.get(i), 1e-9);
+		}
+	}
+
+	@Test
+	void extract_transparentPixels_ignored() {
+		BufferedImage image = new BufferedImage(300, 300, BufferedImage.TYPE_INT_ARGB);
+		image.setRGB(10, 10, 0xFFFF0000);
+		ImagePalette.Histogram histogram = ImagePalette.histogram(image, null);
+		assertEquals(1, Arrays.stream(histogram.counts).sum());
+		assertEquals(1, ImagePalette.extract(image, 4, new Settings()).size());
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = { 0, -1 })
+	void extract_noColors_returnsEmpty(int colorsCount) {
+		BufferedImage image = noise(40, 40, 4);
+		assertTrue(ImagePalette.extract(image, colorsCount, new Settings()).isEmpty());
+	}
+
+	@ParameterizedTest
+	@EnumSource(value = DistanceType.class, names = { "EUCLIDEAN", "CMC", "CIEDE2000" })
+	void extract_parallel_matchesSerial(DistanceType type) {
+		BufferedImage image = noise(700, 500, 3);
+		Settings settings = new Settings().distanceType(type).quality(20).seed(5L);
+		List<double[]> serial = ImagePalette.extract(image, 8, settings);
+		assertEquals(8, serial.size());
+
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			List<double[]> parallel = ImagePalette.extract(image, 8, settings.copy().executor(pool));
+			for (int i = 0; i < serial.size(); i++) {
+				assertArrayEquals(serial.get(i), parallel.get(i));
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	void extract_rejectedCentroid_takesClosestFreeBin() {
+		// black, then two grays whose weighted mean (L 48) the constraint rejects.
+		// The black centroid is exactly its bin (1024 pixels), so takes it first.
+		int[] colors = { 0xFF000000, 0xFF6A6A6A, 0xFF888888 };
+		BufferedImage image = new BufferedImage(128, 12, BufferedImage.TYPE_INT_ARGB);
+		for (int y = 0; y < image.getHeight(); y++) {
+			for (int x = 0; x < image.getWidth(); x++) {
+				image.setRGB(x, y, colors[y < 8 ? 0 : y < 11 ? 1 : 2]);
+			}
+		}
+		ColorConstraint constraint = ColorConstraint.hcl(0, 360, 0, 100, 46, 52).negate();
+		// a single iteration, as a swapped centroid could recover in the next
+		List<double[]> palette = ImagePalette.extract(image, 2, new Settings().constraint(constraint).quality(1).seed(3L));
+
+		double[] black = new double[3];
+		double[] gray = new double[3];
+		Conversion.argbToLab(colors, 0, black, 0, 1);
+		Conversion.argbToLab(colors, 1, gray, 0, 1);
+		assertEquals(2, palette.size());
+		assertArrayEquals(black, palette.get(0), 1e-9);
+		assertArrayEquals(gray, palette.get(1), 1e-9);
+	}
+
+	@Test
+	void histogram_countsEveryPixel() {
+		BufferedImage image = noise(517, 263, 4);
+		ImagePalette.Histogram histogram = ImagePalette.histogram(image, ForkJoinPool.commonPool());
+		assertEquals(517L * 263, Arrays.stream(histogram.counts).sum());
+
+		SampleSpace samples = histogram.samples(rgb -> rgb[0] > 128, null);
+		for (int i = 0; i < samples.size; i++) {
+			assertTrue(Conversion.labToRgb(samples.get(i))[0] > 127.5);
+		}
+	}
+
+	/**
+	 * @return an image of noise around a few base colors
+	 */
+	private static BufferedImage noise(int width, int height, long seed) {
+		Random random = new Random(seed);
+		int[][] bases = { { 200, 40, 40 }, { 30, 90, 200 }, { 240, 220, 60 }, { 20, 140, 60 } };
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int[] base = bases[(x / 50 + y / 50) % bases.length];
+				int r = Math.max(0, Math.min(255, base[0] + (int) (random.nextGaussian() * 20)));
+				int g = Math.max(0, Math.min(255, base[1] + (int) (random.nextGaussian() * 20)));
+				int b = Math.max(0, Math.min(255, base[2] + (int) (random.nextGaussian() * 20)));
+				image.setRGB(x, y, (r << 16) | (g << 8) | b);
+			}
+		}
+		return image;
+	}
+
+}
@@ -0,0 +1,235 @@
+package com.github.micycle1.iwanthue;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import com.github.micycle1.iwanthue.ColorDistance.DistanceType;
+
+class KMeansTests {
+
+	@ParameterizedTest
+	@CsvSource({ "EUCLIDEAN, 8, 1", "EUCLIDEAN, 20, 2", "EUCLIDEAN, 40, 3", "CMC, 8, 4", "CMC, 20, 5", "COMPROMISE, 5, 6", "CIEDE2000, 12, 7", "COMPROMISE_CIEDE2000, 4, 8" })
+	void run_matchesOriginalImplementation(DistanceType distanceType, int colorsCount, long seed) {
+		Predicate<double[]> filter = rgb -> rgb[0] + rgb[1] + rgb[2] > 60;
+		SampleSpace space = SampleSpace.get(filter, false);
+		List<double[]> initial = randomCentroids(colorsCount, new Random(seed));
+		int steps = PreparedColors.simulates(distanceType) ? 3 : 10;
+
+		KMeans kMeans = new KMeans(space, initial, distanceType);
+		kMeans.run(steps);
+		List<double[]> actual = kMeans.centroids();
+
+		List<double[]> colorSamples = new ArrayList<>();
+		for (int i = 0; i < space.size; i++) {
+			colorSamples.add(space.get(i));
+		}
+		Predicate<double[]> checkColor = lab -> Conversion.validateLab(lab) && filter.test(Conversion.labToRgb(lab));
+		List<double[]> expected = originalKMeans(new ArrayList<>(initial), colorSamples, checkColor, steps, distanceType);
+
+		assertEquals(expected.size(), actual.size());
+		for (int j = 0; j < expected.size(); j++) {
+			assertArrayEquals(expected.get(j), actual.get(j));
+		}
+	}
+
+	@ParameterizedTest
+	@CsvSource({ "EUCLIDEAN, 2", "EUCLIDEAN, 7", "CMC, 3" })
+	void run_parallel_matchesSerial(DistanceType distanceType, int threads) {
+		SampleSpace space = SampleSpace.get(null, true);
+		assertTrue(space.size > 4 * KMeans.BLOCK_SIZE);
+		List<double[]> initial = randomCentroids(12, new Random(threads));
+
+		KMeans serial = new KMeans(space, initial, distanceType);
+		serial.run(4);
+
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			KMeans forkJoin = new KMeans(space, initial, distanceType, pool);
+			forkJoin.run(4);
+			KMeans fixed = new KMeans(space, initial, distanceType, executor);
+			fixed.run(4);
+			for (int j = 0; j < initial.size(); j++) {
+				assertArrayEquals(serial.centroids().get(j), forkJoin.centroids().get(j));
+				assertArrayEquals(serial.centroids().get(j), fixed.centroids().get(j));
+			}
+		} finally {
+			pool.shutdown();
+			executor.shutdown();
+		}
+	}
+
+	@ParameterizedTest
+	@CsvSource({ "EUCLIDEAN, 4", "EUCLIDEAN, 16", "CMC, 6" })
+	void run_stopsOnceConverged_sameCentroids(DistanceType distanceType, int colorsCount) {
+		SampleSpace space = SampleSpace.get(null, false);
+		List<double[]> initial = randomCentroids(colorsCount, new Random(colorsCount));
+
+		KMeans fixed = new KMeans(space, initial, distanceType);
+		fixed.run(100);
+		KMeans converging = new KMeans(space, initial, distanceType);
+		int steps = converging.run(100, 0);
+
+		assertTrue(steps < 100);
+		for (int j = 0; j < colorsCount; j++) {
+			assertArrayEquals(fixed.centroids().get(j), converging.centroids().get(j));
+		}
+		// converged, so the last step reassigned nothing
+		assertEquals(0, converging.reassigned());
+	}
+
+	@ParameterizedTest
+	@CsvSource({ "EUCLIDEAN, 4", "EUCLIDEAN, 16", "CMC, 6" })
+	void step_reportsStatistics(DistanceType distanceType, int colorsCount) {
+		SampleSpace space = SampleSpace.get(null, false);
+		KMeans kMeans = new KMeans(space, randomCentroids(colorsCount, new Random(colorsCount)), distanceType);
+		List<double[]> before = kMeans.centroids();
+		double shift = kMeans.step();
+
+		double expectedShift = 0;
+		for (int j = 0; j < colorsCount; j++) {
+			expectedShift += ColorDistance.getColorDistance(before.get(j), kMeans.centroids().get(j), DistanceType.EUCLIDEAN);
+		}
+		assertEquals(expectedShift, shift, 1e-9);
+		// every sample is assigned for the first time
+		assertEquals(space.size, kMeans.reassigned());
+		assertTrue(kMeans.distanceEvaluations() > 0);
+		if (distanceType == DistanceType.CMC) {
+			assertTrue(kMeans.distanceEvaluations() >= (long) space.size * colorsCount);
+		}
+	}
+
+	@ParameterizedTest
+	@CsvSource({ "EUCLIDEAN, 3, 12", "CMC, 4, 4" })
+	void run_fixedCentroids_neverMove(DistanceType distanceType, int fixed, int colorsCount) {
+		SampleSpace space = SampleSpace.get(null, false);
+		List<double[]> initial = randomCentroids(colorsCount, new Random(fixed));
+
+		KMeans kMeans = new KMeans(space, initial, fixed, distanceType, null);
+		kMeans.run(10);
+		List<double[]> centroids = kMeans.centroids();
+		for (int j = 0; j < fixed; j++) {
+			assertArrayEquals(initial.get(j), centroids.get(j));
+		}
+		for (int j = fixed; j < colorsCount; j++) {
+			assertFalse(Arrays.equals(initial.get(j), centroids.get(j)));
+		}
+	}
+
+	@Test
+	void move_rejectedCentroid_takesClosestFreeSampleOfArbitrarySpace() {
+		// the weighted mean of the second cluster, L 48, is rejected
+		ColorConstraint constraint = ColorConstraint.hcl(0, 360, 0, 100, 47, 53).negate();
+		SampleSpace space = SampleSpace.of(null, constraint, new double[] { 10, 45, 57 }, new double[3], new double[3],
+				new double[] { 1, 3, 1 }, 3);
+		List<double[]> initial = List.of(new double[] { 10, 0, 0 }, new double[] { 60, 0, 0 });
+
+		KMeans kMeans = new KMeans(space, initial, 1, DistanceType.EUCLIDEAN, null);
+		kMeans.step();
+		assertArrayEquals(new double[] { 45, 0, 0 }, kMeans.centroids().get(1));
+	}
+
+	private static List<double[]> randomCentroids(int count, Random random) {
+		List<double[]> centroids = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			centroids.add(new double[] { 100 * random.nextDouble(), 100 * (2 * random.nextDouble() - 1), 100 * (2 * random.nextDouble() - 1) });
+		}
+		return centroids;
+	}
+
+	/**
+	 * The k-means loop of iWantHue.generate() before it was rewritten on flat
+	 * buffers, kept as a reference.
+	 */
+	private static List<double[]> originalKMeans(List<double[]> kMeans, List<double[]> colorSamples, Predicate<double[]> checkColor2,
+			int steps, DistanceType distanceType) {
+		List<Integer> samplesClosest = new ArrayList<>();
+		for (int i = 0; i < colorSamples.size(); i++) {
+			samplesClosest.add(null);
+		}
+		while (steps-- > 0) {
+			// kMeans -> Samples Closest
+			for (int i = 0; i < colorSamples.size(); i++) {
+				double[] lab = colorSamples.get(i);
+				double minDistance = Double.POSITIVE_INFINITY;
+				for (int j = 0; j < kMeans.size(); j++) {
+					double[] kMean = kMeans.get(j);
+					double distance = ColorDistance.getColorDistance(lab, kMean, distanceType);
+					if (distance < minDistance) {
+						minDistance = distance;
+						samplesClosest.set(i, j);
+					}
+				}
+			}
+
+			// Samples -> kMeans
+			List<double[]> freeColorSamples = new ArrayList<>(colorSamples);
+			for (int j = 0; j < kMeans.size(); j++) {
+				int count = 0;
+				double[] candidateKMean = { 0, 0, 0 };
+				for (int i = 0; i < colorSamples.size(); i++) {
+					if (samplesClosest.get(i) == j) {
+						count++;
+						candidateKMean[0] += colorSamples.get(i)[0];
+						candidateKMean[1] += colorSamples.get(i)[1];
+						candidateKMean[2] += colorSamples.get(i)[2];
+					}
+				}
+				if (count != 0) {
+					candidateKMean[0] /= count;
+					candidateKMean[1] /= count;
+					candidateKMean[2] /= count;
+				}
+
+				if (count != 0 && checkColor2.test(new double[] { candidateKMean[0], candidateKMean[1], candidateKMean[2] })) {
+					kMeans.set(j, candidateKMean);
+				} else {
+					if (freeColorSamples.size() > 0) {
+						double minDistance = Double.POSITIVE_INFINITY;
+						int closest = -1;
+						for (int i = 0; i < freeColorSamples.size(); i++) {
+							double distance = ColorDistance.getColorDistance(freeColorSamples.get(i), candidateKMean, distanceType);
+							if (distance < minDistance) {
+								minDistance = distance;
+								closest = i;
+							}
+						}
+						if (closest >= 0) {
+							kMeans.set(j, colorSamples.get(closest));
+						}
+					} else {
+						double minDistance = Double.POSITIVE_INFINITY;
+						int closest = -1;
+						for (int i = 0; i < colorSamples.size(); i++) {
+							double distance = ColorDistance.getColorDistance(colorSamples.get(i), candidateKMean, distanceType);
+							if (distance < minDistance) {
+								minDistance = distance;
+								closest = i;
+							}
+						}
+						if (closest >= 0) {
+							kMeans.set(j, colorSamples.get(closest));
+						}
+					}
+				}
+
+				final int current_j = j;
+				freeColorSamples.removeIf(color -> Arrays.equals(color, kMeans.get(current_j)));
+			}
+		}
+		return kMeans;
+	}
+
+}
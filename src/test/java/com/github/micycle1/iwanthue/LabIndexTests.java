@@ -0,0 +1,53 @@
+package com.github.micycle1.iwanthue;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.RepetitionInfo;
+
+class LabIndexTests {
+
+	@RepeatedTest(20)
+	void nearest_matchesLinearScan(RepetitionInfo info) {
+		Random random = new Random(info.getCurrentRepetition());
+		int n = 1 + random.nextInt(2000);
+		double[] l = new double[n];
+		double[] a = new double[n];
+		double[] b = new double[n];
+		boolean[] excluded = new boolean[n];
+		for (int i = 0; i < n; i++) {
+			// coarse coordinates, so that there are plenty of ties
+			l[i] = random.nextInt(21) * 5;
+			a[i] = random.nextInt(21) * 10 - 100;
+			b[i] = random.nextInt(21) * 10 - 100;
+			excluded[i] = random.nextInt(4) == 0;
+		}
+		LabIndex index = new LabIndex(l, a, b, n);
+		LabIndex.Search search = new LabIndex.Search();
+
+		for (int q = 0; q < 200; q++) {
+			double[] query = { random.nextInt(101), random.nextInt(201) - 100, random.nextInt(201) - 100 };
+			assertEquals(linearNearest(l, a, b, query, null), index.nearest(search, query[0], query[1], query[2], null));
+			assertEquals(linearNearest(l, a, b, query, excluded), index.nearest(search, query[0], query[1], query[2], excluded));
+		}
+	}
+
+	private static int linearNearest(double[] l, double[] a, double[] b, double[] query, boolean[] excluded) {
+		double minDistance = Double.POSITIVE_INFINITY;
+		int closest = -1;
+		for (int i = 0; i < l.length; i++) {
+			if (excluded != null && excluded[i]) {
+				continue;
+			}
+			double distance = ColorDistance.getColorDistance(new double[] { l[i], a[i], b[i] }, query, ColorDistance.DistanceType.EUCLIDEAN);
+			if (distance < minDistance) {
+				minDistance = distance;
+				closest = i;
+			}
+		}
+		return closest;
+	}
+
+}
@@ -0,0 +1,96 @@
+package com.github.micycle1.iwanthue;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import com.github.micycle1.iwanthue.ColorDistance.DistanceType;
+
+class MiniBatchKMeansTests {
+
+	@ParameterizedTest
+	@CsvSource({ "EUCLIDEAN, 4, 2", "EUCLIDEAN, 16, 3", "CMC, 6, 2", "CIEDE2000, 5, 3" })
+	void run_parallel_matchesSerial(DistanceType distanceType, int colorsCount, int threads) {
+		SampleSpace space = SampleSpace.get(null, false);
+		List<double[]> initial = randomCentroids(colorsCount, new SplittableRandom(colorsCount));
+		int batchSize = 3 * KMeans.BLOCK_SIZE;
+
+		MiniBatchKMeans serial = new MiniBatchKMeans(space, initial, 0, batchSize, distanceType, null, new SplittableRandom(1));
+		serial.run(5, -1);
+
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			MiniBatchKMeans forkJoin = new MiniBatchKMeans(space, initial, 0, batchSize, distanceType, pool, new SplittableRandom(1));
+			forkJoin.run(5, -1);
+			MiniBatchKMeans fixed = new MiniBatchKMeans(space, initial, 0, batchSize, distanceType, executor, new SplittableRandom(1));
+			fixed.run(5, -1);
+			for (int j = 0; j < initial.size(); j++) {
+				assertArrayEquals(serial.palette().get(j), forkJoin.palette().get(j));
+				assertArrayEquals(serial.palette().get(j), fixed.palette().get(j));
+			}
+		} finally {
+			pool.shutdown();
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	void run_centroidsStayInSampleSpace() {
+		SampleSpace space = SampleSpace.get(rgb -> rgb[0] > rgb[2], ColorConstraint.INTENSE, false);
+		MiniBatchKMeans miniBatch = new MiniBatchKMeans(space, randomCentroids(10, new SplittableRandom(4)), 0, 512, DistanceType.EUCLIDEAN,
+				null, new SplittableRandom(4));
+		miniBatch.run(20, -1);
+		double[] rgb = new double[3];
+		for (double[] lab : miniBatch.palette()) {
+			assertTrue(space.accepts(lab, rgb));
+		}
+	}
+
+	@Test
+	void run_fixedCentroids_doNotMove() {
+		SampleSpace space = SampleSpace.get(null, false);
+		List<double[]> initial = randomCentroids(8, new SplittableRandom(9));
+		MiniBatchKMeans miniBatch = new MiniBatchKMeans(space, initial, 3, 1024, DistanceType.CMC, null, new SplittableRandom(9));
+		miniBatch.run(10, -1);
+		List<double[]> palette = miniBatch.palette();
+		for (int j = 0; j < 3; j++) {
+			assertArrayEquals(initial.get(j), palette.get(j));
+		}
+		assertTrue(miniBatch.distanceEvaluations() > 0);
+	}
+
+	@ParameterizedTest
+	@CsvSource({ "EUCLIDEAN, 12", "CMC, 8" })
+	void run_qualityComparableToKMeans(DistanceType distanceType, int colorsCount) {
+		SampleSpace space = SampleSpace.get(null, false);
+		List<double[]> initial = randomCentroids(colorsCount, new SplittableRandom(colorsCount));
+
+		KMeans kMeans = new KMeans(space, initial, distanceType);
+		kMeans.run(50, 0);
+		MiniBatchKMeans miniBatch = new MiniBatchKMeans(space, initial, 0, 1024, distanceType, null, new SplittableRandom(colorsCount));
+		miniBatch.run(50, 0);
+
+		double expected = ColorDistance.minDistance(kMeans.palette(), distanceType);
+		double actual = ColorDistance.minDistance(miniBatch.palette(), distanceType);
+		assertTrue(actual > 0.5 * expected, actual + " vs " + expected);
+	}
+
+	private static List<double[]> randomCentroids(int count, SplittableRandom random) {
+		List<double[]> centroids = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			centroids.add(new double[] { 100 * random.nextDouble(), 100 * (2 * random.nextDouble() - 1), 100 * (2 * random.nextDouble() - 1) });
+		}
+		return centroids;
+	}
+
+}
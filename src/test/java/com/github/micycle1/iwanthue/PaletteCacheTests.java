@@ -0,0 +1,173 @@
+package com.github.micycle1.iwanthue;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PaletteCacheTests {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void generate_hit_returnsSamePaletteWithoutGenerating() throws Exception {
+		AtomicInteger iterations = new AtomicInteger();
+		Settings settings = new Settings().quality(5).seed(1L).listener(stats -> iterations.incrementAndGet());
+		List<double[]> expected = iWantHue.generate(6, settings.copy().listener(null));
+
+		try (PaletteCache cache = new PaletteCache(dir.resolve("palettes"), 16, 10)) {
+			assertPalettesEqual(expected, cache.generate(6, settings));
+			int generated = iterations.get();
+			assertTrue(generated > 0);
+			assertPalettesEqual(expected, cache.generate(6, settings));
+			assertEquals(generated, iterations.get());
+		}
+		// and across reopening
+		try (PaletteCache cache = new PaletteCache(dir.resolve("palettes"), 16, 10)) {
+			int generated = iterations.get();
+			assertPalettesEqual(expected, cache.generate(6, settings));
+			assertEquals(generated, iterations.get());
+		}
+	}
+
+	@Test
+	void generate_uncacheable_generates() throws Exception {
+		AtomicInteger iterations = new AtomicInteger();
+		try (PaletteCache cache = new PaletteCache(dir.resolve("palettes"), 16, 10)) {
+			Settings unseeded = new Settings().quality(2).listener(stats -> iterations.incrementAndGet());
+			cache.generate(4, unseeded);
+			int generated = iterations.get();
+			cache.generate(4, unseeded);
+			assertTrue(iterations.get() > generated);
+
+			Settings filtered = unseeded.copy().seed(2L).filter(rgb -> rgb[0] > 50);
+			generated = iterations.get();
+			cache.generate(4, filtered);
+			cache.generate(4, filtered);
+			assertTrue(iterations.get() > generated + 1);
+
+			// a filter key makes it cacheable
+			cache.generate(4, filtered, "red");
+			generated = iterations.get();
+			cache.generate(4, filtered, "red");
+			assertEquals(generated, iterations.get());
+		}
+	}
+
+	@Test
+	void put_fullBucket_evictsOldest() throws Exception {
+		try (PaletteCache cache = new PaletteCache(dir.resolve("palettes"), PaletteCache.WAYS, 2)) {
+			for (int i = 0; i <= PaletteCache.WAYS; i++) {
+				cache.put(i, i, List.of(new double[] { i, i, i }));
+			}
+			assertNull(cache.get(0, 0));
+			for (int i = 1; i <= PaletteCache.WAYS; i++) {
+				assertArrayEquals(new double[] { i, i, i }, cache.get(i, i).get(0));
+			}
+			// replacing an entry does not evict another
+			cache.put(1, 1, List.of(new double[] { 9, 9, 9 }));
+			assertArrayEquals(new double[] { 9, 9, 9 }, cache.get(1, 1).get(0));
+			assertNotNull(cache.get(2, 2));
+		}
+	}
+
+	@Test
+	void open_differentGeometry_clears() throws Exception {
+		Path file = dir.resolve("palettes");
+		try (PaletteCache cache = new PaletteCache(file, 8, 4)) {
+			cache.put(1, 1, List.of(new double[] { 1, 2, 3 }));
+			assertNotNull(cache.get(1, 1));
+		}
+		try (PaletteCache cache = new PaletteCache(file, 8, 5)) {
+			assertNull(cache.get(1, 1));
+		}
+	}
+
+	@Test
+	void open_afterShrink_persists() throws Exception {
+		Path file = dir.resolve("palettes");
+		try (PaletteCache cache = new PaletteCache(file, 16, 4)) {
+			cache.put(1, 1, List.of(new double[] { 1, 2, 3 }));
+		}
+		// other processes may still map the larger file, so it is never truncated
+		long size = Files.size(file);
+		try (PaletteCache cache = new PaletteCache(file, 8, 4)) {
+			assertNull(cache.get(1, 1));
+			cache.put(2, 2, List.of(new double[] { 4, 5, 6 }));
+		}
+		assertEquals(size, Files.size(file));
+		try (PaletteCache cache = new PaletteCache(file, 8, 4)) {
+			assertArrayEquals(new double[] { 4, 5, 6 }, cache.get(2, 2).get(0));
+		}
+		assertEquals(size, Files.size(file));
+	}
+
+	@Test
+	void get_concurrentWrites_neverReturnsTornPalette() throws Exception {
+		try (PaletteCache cache = new PaletteCache(dir.resolve("palettes"), PaletteCache.WAYS, 64)) {
+			AtomicBoolean done = new AtomicBoolean();
+			ExecutorService readers = Executors.newFixedThreadPool(3);
+			try {
+				List<Future<?>> futures = new ArrayList<>();
+				for (int r = 0; r < 3; r++) {
+					futures.add(readers.submit(() -> {
+						while (!done.get()) {
+							List<double[]> palette = cache.get(7, 7);
+							if (palette != null) {
+								// every write fills a palette with a single value
+								double value = palette.get(0)[0];
+								for (double[] lab : palette) {
+									assertArrayEquals(new double[] { value, value, value }, lab);
+								}
+							}
+						}
+					}));
+				}
+				for (int w = 0; w < 20_000; w++) {
+					List<double[]> palette = new ArrayList<>();
+					for (int i = 0; i < 64; i++) {
+						palette.add(new double[] { w, w, w });
+					}
+					cache.put(7, 7, palette);
+				}
+				done.set(true);
+				for (Future<?> future : futures) {
+					future.get();
+				}
+			} finally {
+				readers.shutdown();
+			}
+		}
+	}
+
+	@Test
+	void key_distinguishesParameters() {
+		Settings settings = new Settings().seed(1L);
+		String key = PaletteCache.key(5, settings, null);
+		assertNotEquals(key, PaletteCache.key(6, settings, null));
+		assertNotEquals(key, PaletteCache.key(5, settings.copy().seed(2L), null));
+		assertNotEquals(key, PaletteCache.key(5, settings.copy().forceMode(true), null));
+		assertNotEquals(key, PaletteCache.key(5, settings.copy().attempts(2), null));
+		assertNotEquals(key, PaletteCache.key(5, settings, "pastel"));
+		assertEquals(key, PaletteCache.key(5, settings.copy().parallel(), null));
+	}
+
+	private static void assertPalettesEqual(List<double[]> expected, List<double[]> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertArrayEquals(expected.get(i), actual.get(i));
+		}
+	}
+
+}
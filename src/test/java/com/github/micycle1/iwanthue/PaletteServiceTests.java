@@ -0,0 +1,88 @@
+package com.github.micycle1.iwanthue;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.micycle1.iwanthue.ColorDistance.DistanceType;
+
+class PaletteServiceTests {
+
+	@Test
+	void submitAll_matchesGenerate() throws Exception {
+		Predicate<double[]> filter = rgb -> rgb[1] > 40;
+		List<PaletteRequest> requests = new ArrayList<>();
+		for (int i = 0; i < 12; i++) {
+			Settings settings = new Settings().filter(i % 2 == 0 ? filter : null).forceMode(i % 3 == 0).quality(5)
+					.distanceType(i % 4 == 0 ? DistanceType.CMC : DistanceType.EUCLIDEAN).seed((long) i);
+			requests.add(new PaletteRequest(3 + i, settings));
+		}
+
+		try (PaletteService service = new PaletteService(3, 4)) {
+			List<CompletableFuture<List<double[]>>> futures = service.submitAll(requests);
+			for (int i = 0; i < requests.size(); i++) {
+				PaletteRequest request = requests.get(i);
+				List<double[]> expected = iWantHue.generate(request.colorsCount(), request.settings());
+				List<double[]> actual = futures.get(i).get(1, TimeUnit.MINUTES);
+				assertEquals(expected.size(), actual.size());
+				for (int j = 0; j < expected.size(); j++) {
+					assertArrayEquals(expected.get(j), actual.get(j));
+				}
+			}
+		}
+	}
+
+	@Test
+	void submit_blocksWhileMaxPending() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		Settings blocking = new Settings().quality(1).seed(1L).listener(stats -> {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+
+		try (PaletteService service = new PaletteService(1, 2)) {
+			service.submit(3, blocking);
+			service.submit(3, blocking);
+			CompletableFuture<CompletableFuture<List<double[]>>> third = CompletableFuture.supplyAsync(() -> service.submit(3, blocking));
+			Thread.sleep(200);
+			assertFalse(third.isDone());
+
+			release.countDown();
+			assertEquals(3, third.get(1, TimeUnit.MINUTES).get(1, TimeUnit.MINUTES).size());
+		}
+	}
+
+	@Test
+	void submit_failure_completesExceptionally() {
+		Predicate<double[]> failing = rgb -> {
+			throw new IllegalStateException("filter failed");
+		};
+		try (PaletteService service = new PaletteService(1, 1)) {
+			CompletableFuture<List<double[]>> future = service.submit(3, new Settings().filter(failing).forceMode(true));
+			ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(1, TimeUnit.MINUTES));
+			assertInstanceOf(IllegalStateException.class, e.getCause());
+			// the permit was released
+			assertDoesNotThrow(() -> service.submit(3, new Settings().quality(1)).get(1, TimeUnit.MINUTES));
+		}
+	}
+
+	@Test
+	void submit_afterClose_rejected() {
+		PaletteService service = new PaletteService(1, 1);
+		service.close();
+		assertThrows(RejectedExecutionException.class, () -> service.submit(3, new Settings()));
+	}
+
+}
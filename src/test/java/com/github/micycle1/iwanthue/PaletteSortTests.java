@@ -0,0 +1,108 @@
+package com.github.micycle1.iwanthue;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import com.github.micycle1.iwanthue.ColorDistance.DistanceType;
+
+class PaletteSortTests {
+
+	@ParameterizedTest
+	@EnumSource(DistanceType.class)
+	void diffSort_matchesNaiveGreedy(DistanceType type) {
+		List<double[]> colors = randomColors(new Random(type.ordinal()), 40);
+		List<double[]> expected = naiveDiffSort(colors, type);
+		List<double[]> actual = iWantHue.diffSort(colors, type);
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertSame(expected.get(i), actual.get(i));
+		}
+	}
+
+	@Test
+	void diffSort_parallel_matchesSerial() {
+		List<double[]> colors = randomColors(new Random(1), 300);
+		List<double[]> serial = PaletteSort.diffSort(colors, 0, DistanceType.CMC, null);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			assertEquals(serial, PaletteSort.diffSort(colors, 0, DistanceType.CMC, pool));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	void diffSort_fixedColors_keepPositions() {
+		List<double[]> colors = randomColors(new Random(2), 12);
+		List<double[]> sorted = PaletteSort.diffSort(colors, 4, DistanceType.EUCLIDEAN, null);
+		assertEquals(colors.subList(0, 4), sorted.subList(0, 4));
+		assertTrue(sorted.containsAll(colors));
+
+		// each next color is the farthest from those before it
+		for (int i = 4; i < sorted.size() - 1; i++) {
+			double chosen = minDistance(sorted.get(i), sorted.subList(0, i), DistanceType.EUCLIDEAN);
+			for (double[] other : sorted.subList(i + 1, sorted.size())) {
+				assertTrue(chosen >= minDistance(other, sorted.subList(0, i), DistanceType.EUCLIDEAN));
+			}
+		}
+	}
+
+	@Test
+	void generate_diffSort_ordersPalette() {
+		Settings settings = new Settings().quality(10).distanceType(DistanceType.CMC).seed(4L);
+		List<double[]> palette = iWantHue.generate(10, settings);
+		List<double[]> expected = iWantHue.diffSort(palette, DistanceType.CMC);
+		List<double[]> actual = iWantHue.generate(10, settings.copy().diffSort(true));
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertArrayEquals(expected.get(i), actual.get(i));
+		}
+	}
+
+	private static List<double[]> naiveDiffSort(List<double[]> colors, DistanceType type) {
+		List<double[]> remaining = new ArrayList<>(colors);
+		List<double[]> sorted = new ArrayList<>();
+		sorted.add(remaining.remove(0));
+		while (!remaining.isEmpty()) {
+			int index = -1;
+			double max = -1;
+			for (int c = 0; c < remaining.size(); c++) {
+				double d = minDistance(remaining.get(c), sorted, type);
+				if (d > max) {
+					max = d;
+					index = c;
+				}
+			}
+			sorted.add(remaining.remove(index));
+		}
+		return sorted;
+	}
+
+	private static double minDistance(double[] color, List<double[]> others, DistanceType type) {
+		double min = Double.POSITIVE_INFINITY;
+		for (double[] other : others) {
+			min = Math.min(min, ColorDistance.getColorDistance(color, other, type));
+		}
+		return min;
+	}
+
+	private static List<double[]> randomColors(Random random, int count) {
+		List<double[]> colors = new ArrayList<>();
+		while (colors.size() < count) {
+			double[] lab = { random.nextDouble() * 100, random.nextDouble() * 200 - 100, random.nextDouble() * 200 - 100 };
+			if (Conversion.validateLab(lab)) {
+				colors.add(lab);
+			}
+		}
+		return colors;
+	}
+
+}
@@ -0,0 +1,124 @@
+package com.github.micycle1.iwanthue;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import com.github.micycle1.iwanthue.ColorDistance.DistanceType;
+
+class PaletteStreamTests {
+
+	@ParameterizedTest
+	@ValueSource(booleans = { false, true })
+	void stream_improvesThenPublishesResult(boolean forceMode) throws Exception {
+		Settings settings = new Settings().forceMode(forceMode).quality(20).seed(8L).attempts(3);
+		Collector collector = new Collector(Long.MAX_VALUE);
+		iWantHue.stream(7, settings, 2).subscribe(collector);
+		collector.done.get(1, TimeUnit.MINUTES);
+
+		List<List<double[]>> palettes = collector.palettes;
+		assertTrue(palettes.size() >= 2);
+		for (int i = 1; i < palettes.size() - 1; i++) {
+			assertTrue(ColorDistance.minDistance(palettes.get(i), DistanceType.DEFAULT) > ColorDistance.minDistance(palettes.get(i - 1),
+					DistanceType.DEFAULT));
+		}
+		List<double[]> expected = iWantHue.generate(7, settings);
+		List<double[]> last = palettes.get(palettes.size() - 1);
+		assertEquals(expected.size(), last.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertArrayEquals(expected.get(i), last.get(i));
+		}
+	}
+
+	@ParameterizedTest
+	@ValueSource(longs = { 1, Long.MAX_VALUE })
+	void stream_cancel_stopsGeneration(long demand) throws Exception {
+		AtomicInteger iterations = new AtomicInteger();
+		// a negative tolerance never stops early
+		Settings settings = new Settings().forceMode(true).quality(100_000).tolerance(-1).seed(1L).listener(stats -> iterations.incrementAndGet());
+		Collector collector = new Collector(demand);
+		iWantHue.stream(20, settings, 1).subscribe(collector);
+		collector.first.get(1, TimeUnit.MINUTES);
+		collector.subscription.cancel();
+
+		Thread.sleep(200);
+		int stopped = iterations.get();
+		Thread.sleep(200);
+		assertEquals(stopped, iterations.get());
+		assertTrue(stopped < 100_000 * 20, "iterations: " + stopped);
+		assertFalse(collector.done.isDone());
+	}
+
+	@Test
+	void stream_noDemand_stallsGeneration() throws Exception {
+		AtomicInteger iterations = new AtomicInteger();
+		Settings settings = new Settings().forceMode(true).quality(100_000).tolerance(-1).seed(1L).listener(stats -> iterations.incrementAndGet());
+		Collector collector = new Collector(1);
+		iWantHue.stream(20, settings, 1).subscribe(collector);
+		collector.first.get(1, TimeUnit.MINUTES);
+
+		Thread.sleep(200);
+		int stalled = iterations.get();
+		Thread.sleep(200);
+		assertEquals(stalled, iterations.get());
+		assertTrue(stalled < 100_000 * 20, "iterations: " + stalled);
+		assertEquals(1, collector.palettes.size());
+		collector.subscription.cancel();
+	}
+
+	@Test
+	void stream_failure_signalsError() {
+		Settings settings = new Settings().forceMode(true).filter(rgb -> {
+			throw new IllegalStateException("filter failed");
+		});
+		Collector collector = new Collector(Long.MAX_VALUE);
+		iWantHue.stream(3, settings, 1).subscribe(collector);
+		Exception e = assertThrows(Exception.class, () -> collector.done.get(1, TimeUnit.MINUTES));
+		assertInstanceOf(IllegalStateException.class, e.getCause());
+	}
+
+	private static class Collector implements Flow.Subscriber<List<double[]>> {
+
+		final long demand;
+		final List<List<double[]>> palettes = new CopyOnWriteArrayList<>();
+		final CompletableFuture<Void> first = new CompletableFuture<>();
+		final CompletableFuture<Void> done = new CompletableFuture<>();
+		volatile Flow.Subscription subscription;
+
+		Collector(long demand) {
+			this.demand = demand;
+		}
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+			subscription.request(demand);
+		}
+
+		@Override
+		public void onNext(List<double[]> palette) {
+			palettes.add(palette);
+			first.complete(null);
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			done.completeExceptionally(throwable);
+		}
+
+		@Override
+		public void onComplete() {
+			done.complete(null);
+		}
+	}
+
+}
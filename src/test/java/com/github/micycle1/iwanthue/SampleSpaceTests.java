@@ -0,0 +1,178 @@
+package com.github.micycle1.iwanthue;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.micycle1.iwanthue.SampleSpace.Resolution;
+
+class SampleSpaceTests {
+
+	@Test
+	void get_sameFilter_returnsCachedInstance() {
+		Predicate<double[]> filter = rgb -> rgb[0] > 100;
+		assertSame(SampleSpace.get(filter, false), SampleSpace.get(filter, false));
+		assertSame(SampleSpace.get(null, true), SampleSpace.get(null, true));
+		assertNotSame(SampleSpace.get(filter, false), SampleSpace.get(filter, true));
+		assertNotSame(SampleSpace.get(filter, false), SampleSpace.get(rgb -> rgb[0] > 100, false));
+	}
+
+	@Test
+	void get_matchesGridEnumeration() {
+		Predicate<double[]> filter = rgb -> rgb[2] < 128;
+		SampleSpace space = SampleSpace.get(filter, Resolution.NORMAL);
+
+		List<double[]> expected = new ArrayList<>();
+		for (int l = 0; l <= 100; l += 5) {
+			for (int a = -100; a <= 100; a += 10) {
+				for (int b = -100; b <= 100; b += 10) {
+					double[] lab = { l, a, b };
+					if (Conversion.validateLab(lab) && filter.test(Conversion.labToRgb(lab))) {
+						expected.add(lab);
+					}
+				}
+			}
+		}
+
+		assertEquals(expected.size(), space.size);
+		for (int i = 0; i < space.size; i++) {
+			assertArrayEquals(expected.get(i), space.get(i));
+		}
+	}
+
+	@Test
+	void get_equalConstraints_shareInstance() {
+		ColorConstraint constraint = ColorConstraint.hcl(0, 360, 0, 30, 70, 100);
+		assertSame(SampleSpace.get(null, ColorConstraint.PASTEL, false), SampleSpace.get(null, constraint, false));
+		assertNotSame(SampleSpace.get(null, ColorConstraint.PASTEL, false), SampleSpace.get(null, ColorConstraint.FANCY_LIGHT, false));
+	}
+
+	@Test
+	void get_constraint_matchesGridEnumeration() {
+		Predicate<double[]> filter = rgb -> rgb[2] < 200;
+		// a wrapping hue range, a union and a negation
+		ColorConstraint constraint = ColorConstraint.RED_ROSES.or(ColorConstraint.ICE_CUBE).and(ColorConstraint.PASTEL.negate());
+		for (Resolution resolution : Resolution.values()) {
+			SampleSpace base = SampleSpace.get(filter, resolution);
+			SampleSpace space = SampleSpace.get(filter, constraint, resolution);
+
+			List<double[]> expected = new ArrayList<>();
+			for (int i = 0; i < base.size; i++) {
+				if (constraint.test(base.get(i))) {
+					expected.add(base.get(i));
+				}
+			}
+			assertTrue(expected.size() > 0);
+			assertEquals(expected.size(), space.size);
+			for (int i = 0; i < space.size; i++) {
+				assertArrayEquals(expected.get(i), space.get(i));
+				assertEquals(i, space.indexOf(space.l[i], space.a[i], space.b[i]));
+			}
+			// grid points outside the constraint have no sample
+			assertEquals(-1, space.indexOf(85, 0, 0));
+		}
+	}
+
+	@Test
+	void get_evictsBeyondCapacity() {
+		Predicate<double[]> filter = rgb -> true;
+		SampleSpace first = SampleSpace.get(filter, false);
+		for (int i = 0; i < SampleSpace.CACHE_CAPACITY; i++) {
+			final int threshold = -i; // capturing lambdas are distinct instances
+			SampleSpace.get(rgb -> rgb[0] >= threshold, false);
+		}
+		assertNotSame(first, SampleSpace.get(filter, false));
+	}
+
+	@Test
+	void get_concurrentCallers_shareInstance() throws Exception {
+		Predicate<double[]> filter = rgb -> rgb[1] > 50;
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<SampleSpace>> futures = new ArrayList<>();
+			for (int i = 0; i < 16; i++) {
+				futures.add(executor.submit(() -> SampleSpace.get(filter, true)));
+			}
+			SampleSpace space = futures.get(0).get();
+			for (Future<SampleSpace> future : futures) {
+				assertSame(space, future.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+
+	@Test
+	void refine_partitionsFineGrid() {
+		SampleSpace coarse = SampleSpace.get(null, Resolution.NORMAL);
+		SampleSpace fine = SampleSpace.get(null, Resolution.ULTRA);
+		// nothing refined: the coarse samples, each weighing the fine grid points of its cell
+		SampleSpace none = coarse.refine(fine, new int[0], 0, 1);
+		assertEquals(coarse.size, none.size);
+		assertEquals(coarse.l[0], none.l[0]);
+		assertEquals(5 * 2 * 2, none.weight(none.indexOf(50, 0, 30)));
+		// a corner of the grid holds fewer fine grid points
+		assertEquals(3 * 2 * 2, none.weight(none.indexOf(0, 0, 0)));
+
+		// everything refined: the fine samples
+		int[] cells = { coarse.cellOf(50, 0, 0) };
+		SampleSpace all = coarse.refine(fine, cells, 1, 20);
+		assertEquals(fine.size, all.size);
+		for (int i = 0; i < all.size; i++) {
+			assertEquals(1, all.weight(i));
+			assertTrue(fine.indexOf(all.l[i], all.a[i], all.b[i]) >= 0);
+		}
+
+		// around a color: fine samples nearby, coarse samples elsewhere
+		cells[0] = coarse.cellOf(52, 31, -14);
+		assertEquals(coarse.cellOf(50, 30, -10), cells[0]);
+		SampleSpace refined = coarse.refine(fine, cells, 1, 1);
+		assertTrue(refined.indexOf(51, 35, -15) >= 0);
+		assertTrue(refined.indexOf(50, 60, -10) >= 0);
+		assertEquals(-1, refined.indexOf(51, 60, -10));
+		double weight = 0;
+		for (int i = 0; i < refined.size; i++) {
+			weight += refined.weight(i);
+		}
+		assertEquals(fine.size, weight, 0.1 * fine.size);
+	}
+
+	@Test
+	void refine_prepared_matchesPreparingFromLab() {
+		Predicate<double[]> filter = rgb -> rgb[1] > 60;
+		SampleSpace coarse = SampleSpace.get(filter, Resolution.NORMAL);
+		SampleSpace fine = SampleSpace.get(filter, Resolution.ULTRA);
+		SampleSpace refined = coarse.refine(fine, new int[] { coarse.cellOf(50, -30, 20) }, 1, 1);
+		assertTrue(refined.size > coarse.size);
+
+		PreparedColors prepared = refined.prepared(true);
+		assertSame(prepared, refined.prepared(true));
+		PreparedColors expected = PreparedColors.of(refined, true);
+		assertPreparedEquals(expected, prepared);
+		for (int t = 0; t < expected.simulated.length; t++) {
+			assertPreparedEquals(expected.simulated[t], prepared.simulated[t]);
+		}
+		assertNull(refined.prepared(false).simulated);
+		assertPreparedEquals(expected, refined.prepared(false));
+	}
+
+	private static void assertPreparedEquals(PreparedColors expected, PreparedColors actual) {
+		assertEquals(expected.size, actual.size);
+		assertArrayEquals(expected.l, actual.l);
+		assertArrayEquals(expected.a, actual.a);
+		assertArrayEquals(expected.b, actual.b);
+		assertArrayEquals(expected.c, actual.c);
+		assertArrayEquals(expected.sl, actual.sl);
+		assertArrayEquals(expected.sc, actual.sc);
+		assertArrayEquals(expected.sh, actual.sh);
+	}
+
+}
@@ -0,0 +1,147 @@
+package com.github.micycle1.iwanthue;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import com.github.micycle1.iwanthue.ColorDistance.DistanceType;
+
+class iWantHueTests {
+
+	@ParameterizedTest
+	@EnumSource(Clustering.class)
+	void generate_sameSeed_samePalette(Clustering clustering) {
+		Settings settings = new Settings().clustering(clustering).quality(10).distanceType(DistanceType.CMC).seed(42L);
+		List<double[]> first = iWantHue.generate(8, settings);
+		List<double[]> second = iWantHue.generate(8, settings);
+		assertPalettesEqual(first, second);
+
+		List<double[]> other = iWantHue.generate(8, settings.copy().seed(43L));
+		assertFalse(palettesEqual(first, other));
+	}
+
+	@ParameterizedTest
+	@EnumSource(Clustering.class)
+	void generate_attempts_independentOfExecutor(Clustering clustering) {
+		Settings settings = new Settings().clustering(clustering).quality(5).seed(7L).attempts(6);
+		List<double[]> serial = iWantHue.generate(10, settings);
+
+		ForkJoinPool pool = new ForkJoinPool(3);
+		ExecutorService fixed = Executors.newFixedThreadPool(2);
+		try {
+			assertPalettesEqual(serial, iWantHue.generate(10, settings.copy().executor(pool)));
+			assertPalettesEqual(serial, iWantHue.generate(10, settings.copy().executor(fixed)));
+		} finally {
+			pool.shutdown();
+			fixed.shutdown();
+		}
+	}
+
+	@ParameterizedTest
+	@EnumSource(Clustering.class)
+	void generate_attempts_keepsBestMinimumDistance(Clustering clustering) {
+		Settings settings = new Settings().clustering(clustering).quality(5).seed(3L);
+		// the first attempt is the single-attempt palette
+		double single = ColorDistance.minDistance(iWantHue.generate(12, settings), DistanceType.DEFAULT);
+		double best = ColorDistance.minDistance(iWantHue.generate(12, settings.copy().attempts(8)), DistanceType.DEFAULT);
+		assertTrue(best >= single);
+	}
+
+	@ParameterizedTest
+	@EnumSource(Clustering.class)
+	void generate_listener_reportsEveryIteration(Clustering clustering) {
+		List<IterationStats> stats = new ArrayList<>();
+		Settings settings = new Settings().clustering(clustering).quality(5).seed(11L);
+		List<double[]> palette = iWantHue.generate(6, settings.copy().listener(stats::add));
+
+		assertPalettesEqual(iWantHue.generate(6, settings), palette);
+		assertFalse(stats.isEmpty());
+		for (int i = 0; i < stats.size(); i++) {
+			IterationStats s = stats.get(i);
+			assertEquals(0, s.attempt());
+			assertEquals(i + 1, s.iteration());
+			assertTrue(s.distanceEvaluations() > 0);
+			assertEquals(ColorDistance.minDistance(s.palette(), DistanceType.DEFAULT), s.minDistance());
+			assertTrue(i == 0 || s.elapsedNanos() >= stats.get(i - 1).elapsedNanos());
+		}
+		assertPalettesEqual(palette, stats.get(stats.size() - 1).palette());
+	}
+
+	@Test
+	void generate_kMeans_stopsOnceConverged() {
+		List<IterationStats> stats = new ArrayList<>();
+		iWantHue.generate(5, new Settings().quality(500).seed(5L).listener(stats::add));
+		assertTrue(stats.size() < 500);
+		assertEquals(0, stats.get(stats.size() - 1).centroidShift());
+	}
+
+	@Test
+	void generate_adaptivePrecision_refinesOnUltraGrid() {
+		List<IterationStats> stats = new ArrayList<>();
+		Settings settings = new Settings().adaptivePrecision(true).seed(13L);
+		List<double[]> palette = iWantHue.generate(10, settings.copy().listener(stats::add));
+		assertPalettesEqual(iWantHue.generate(10, settings), palette);
+		assertEquals(0, stats.get(stats.size() - 1).centroidShift());
+
+		List<double[]> ultra = iWantHue.generate(10, settings.copy().adaptivePrecision(false).ultraPrecision(true).quality(200));
+		double expected = ColorDistance.minDistance(ultra, DistanceType.DEFAULT);
+		assertTrue(ColorDistance.minDistance(palette, DistanceType.DEFAULT) > 0.8 * expected);
+	}
+
+	@ParameterizedTest
+	@EnumSource(Clustering.class)
+	void extend_keepsLockedColors(Clustering clustering) {
+		Settings settings = new Settings().clustering(clustering).quality(10).seed(21L);
+		List<double[]> locked = iWantHue.generate(5, settings);
+		List<double[]> lockedCopy = new ArrayList<>();
+		locked.forEach(lab -> lockedCopy.add(lab.clone()));
+
+		List<double[]> added = iWantHue.extend(locked, 3, settings.copy().attempts(2));
+		assertEquals(3, added.size());
+		assertPalettesEqual(lockedCopy, locked);
+		for (double[] lab : added) {
+			assertTrue(Conversion.validateLab(lab));
+			for (double[] existing : locked) {
+				assertTrue(ColorDistance.getColorDistance(lab, existing, DistanceType.DEFAULT) > 1);
+			}
+		}
+	}
+
+	@ParameterizedTest
+	@EnumSource(Clustering.class)
+	void generate_constraint_satisfied(Clustering clustering) {
+		ColorConstraint constraint = ColorConstraint.GREEN_MINT.or(ColorConstraint.BLUE_OCEAN);
+		List<double[]> palette = iWantHue.generate(8, new Settings().clustering(clustering).quality(10).constraint(constraint).seed(2L));
+		assertEquals(8, palette.size());
+		for (double[] lab : palette) {
+			assertTrue(constraint.test(lab), Arrays.toString(lab));
+			assertTrue(Conversion.validateLab(lab));
+		}
+	}
+
+	private static void assertPalettesEqual(List<double[]> expected, List<double[]> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertArrayEquals(expected.get(i), actual.get(i));
+		}
+	}
+
+	private static boolean palettesEqual(List<double[]> p1, List<double[]> p2) {
+		for (int i = 0; i < p1.size(); i++) {
+			if (!Arrays.equals(p1.get(i), p2.get(i))) {
+				return false;
+			}
+		}
+		return p1.size() == p2.size();
+	}
+
+}
@@ -0,0 +1,79 @@
+package com.github.micycle1.iwanthue;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Distance kernels vectorized with the Vector API. Each lane performs the same
+ * IEEE operations, in the same order, as the scalar kernels (there is no fused
+ * multiply-add), so results are bitwise equal. Loaded by
+ * {@link DistanceKernels#get()} when available.
+ */
+final class VectorKernels extends DistanceKernels {
+
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+	VectorKernels() {
+	}
+
+	@Override
+	boolean vectorized() {
+		return true;
+	}
+
+	@Override
+	void euclidean(PreparedColors colors, int from, int to, double l, double a, double b, double[] out) {
+		final double[] cl = colors.l;
+		final double[] ca = colors.a;
+		final double[] cb = colors.b;
+		final int bound = from + SPECIES.loopBound(to - from);
+		int i = from;
+		for (; i < bound; i += SPECIES.length()) {
+			final DoubleVector delta0 = DoubleVector.fromArray(SPECIES, cl, i).sub(l);
+			final DoubleVector delta1 = DoubleVector.fromArray(SPECIES, ca, i).sub(a);
+			final DoubleVector delta2 = DoubleVector.fromArray(SPECIES, cb, i).sub(b);
+			delta0.mul(delta0).add(delta1.mul(delta1)).add(delta2.mul(delta2)).sqrt().intoArray(out, i - from);
+		}
+		for (; i < to; i++) {
+			final double delta0 = cl[i] - l;
+			final double delta1 = ca[i] - a;
+			final double delta2 = cb[i] - b;
+			out[i - from] = Math.sqrt(delta0 * delta0 + delta1 * delta1 + delta2 * delta2);
+		}
+	}
+
+	@Override
+	void cmc(PreparedColors colors, int from, int to, PreparedColors other, int j, double[] out) {
+		final double L2 = other.l[j];
+		final double a2 = other.a[j];
+		final double b2 = other.b[j];
+		final double C2 = other.c[j];
+		final int bound = from + SPECIES.loopBound(to - from);
+		int i = from;
+		for (; i < bound; i += SPECIES.length()) {
+			final DoubleVector deltaC = DoubleVector.fromArray(SPECIES, colors.c, i).sub(C2);
+			final DoubleVector deltaL = DoubleVector.fromArray(SPECIES, colors.l, i).sub(L2);
+			final DoubleVector deltaa = DoubleVector.fromArray(SPECIES, colors.a, i).sub(a2);
+			final DoubleVector deltab = DoubleVector.fromArray(SPECIES, colors.b, i).sub(b2);
+			final DoubleVector deltaH = deltaa.mul(deltaa).add(deltab.mul(deltab)).sub(deltaC.mul(deltaC)).sqrt();
+
+			final DoubleVector dL = deltaL.div(DoubleVector.fromArray(SPECIES, colors.sl, i).mul(2));
+			final DoubleVector dC = deltaC.div(DoubleVector.fromArray(SPECIES, colors.sc, i));
+			final DoubleVector dH = deltaH.div(DoubleVector.fromArray(SPECIES, colors.sh, i));
+			dL.mul(dL).add(dC.mul(dC)).add(dH.mul(dH)).sqrt().intoArray(out, i - from);
+		}
+		for (; i < to; i++) {
+			final double deltaC = colors.c[i] - C2;
+			final double deltaL = colors.l[i] - L2;
+			final double deltaa = colors.a[i] - a2;
+			final double deltab = colors.b[i] - b2;
+			final double deltaH = Math.sqrt(deltaa * deltaa + deltab * deltab - deltaC * deltaC);
+
+			final double dL = deltaL / (2 * colors.sl[i]);
+			final double dC = deltaC / colors.sc[i];
+			final double dH = deltaH / colors.sh[i];
+			out[i - from] = Math.sqrt(dL * dL + dC * dC + dH * dH);
+		}
+	}
+
+}
@@ -0,0 +1,75 @@
+package com.github.micycle1.iwanthue;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class VectorKernelsTests {
+
+	private final DistanceKernels scalar = new DistanceKernels();
+	private final DistanceKernels vector = new VectorKernels();
+
+	@Test
+	void get_loadsVectorKernels() {
+		assertTrue(DistanceKernels.get().vectorized());
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = { 0, 1, 7, 8, 9, 31, 1000, 2048 })
+	void euclidean_matchesScalar(int length) {
+		PreparedColors colors = randomColors(new Random(length), length + 5);
+		PreparedColors centroids = randomColors(new Random(-length), 12);
+		double[] expected = new double[length];
+		double[] actual = new double[length];
+		for (int j = 0; j < centroids.size; j++) {
+			scalar.euclidean(colors, 5, 5 + length, centroids.l[j], centroids.a[j], centroids.b[j], expected);
+			vector.euclidean(colors, 5, 5 + length, centroids.l[j], centroids.a[j], centroids.b[j], actual);
+			assertArrayEquals(expected, actual);
+		}
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = { 0, 1, 7, 8, 9, 31, 1000, 2048 })
+	void cmc_matchesScalar(int length) {
+		PreparedColors colors = randomColors(new Random(length), length + 5);
+		PreparedColors centroids = randomColors(new Random(-length), 12);
+		double[] expected = new double[length];
+		double[] actual = new double[length];
+		for (int j = 0; j < centroids.size; j++) {
+			scalar.cmc(colors, 5, 5 + length, centroids, j, expected);
+			vector.cmc(colors, 5, 5 + length, centroids, j, actual);
+			assertArrayEquals(expected, actual);
+		}
+	}
+
+	/**
+	 * @return random prepared colors, some of them neutral, duplicated or NaN
+	 */
+	private static PreparedColors randomColors(Random random, int count) {
+		PreparedColors colors = new PreparedColors(count, false);
+		for (int i = 0; i < count; i++) {
+			double l = random.nextDouble() * 100;
+			double a = random.nextDouble() * 256 - 128;
+			double b = random.nextDouble() * 256 - 128;
+			switch (i % 10) {
+				case 1 :
+					colors.set(i, l, 0, 0);
+					break;
+				case 2 :
+					colors.set(i, 50, 0, 0);
+					break;
+				case 3 :
+					colors.set(i, Double.NaN, a, b);
+					break;
+				default :
+					colors.set(i, l, a, b);
+			}
+		}
+		return colors;
+	}
+
+}